@@ -0,0 +1,142 @@
+package com.cocosw.query.benchmark;
+
+import android.content.Context;
+import android.util.TypedValue;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.ImageView;
+import android.widget.TextView;
+
+import com.cocosw.query.AbstractViewQuery;
+import com.cocosw.query.CocoQuery;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of starting a chain by CocoQuery.id() and of the common chains, compared with findViewById and setters.
+ * <p/>
+ * The row has 4 levels and 40 views, views under test are at the end of the traversal.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class QueryBenchmark {
+
+    private static final int TITLE = 1001;
+    private static final int ICON = 1002;
+    private static final int IMAGE_RES = 0x7f020001;
+
+    private ViewGroup root;
+    private CocoQuery<AbstractViewQuery.DefaultQuery> query;
+    private CocoQuery<AbstractViewQuery.DefaultQuery> cursor;
+    private CocoQuery<AbstractViewQuery.DefaultQuery> uncached;
+
+    @Setup
+    public void setup() {
+        Context context = new Context();
+        root = new ViewGroup(context);
+        for (int i = 0; i < 3; i++) {
+            ViewGroup section = new ViewGroup(context);
+            root.addView(section, new ViewGroup.MarginLayoutParams(-1, -2));
+            for (int j = 0; j < 3; j++) {
+                ViewGroup line = new ViewGroup(context);
+                section.addView(line, new ViewGroup.MarginLayoutParams(-1, -2));
+                for (int k = 0; k < 3; k++) {
+                    line.addView(new TextView(context), new ViewGroup.MarginLayoutParams(-2, -2));
+                }
+            }
+        }
+        ViewGroup last = new ViewGroup(context);
+        root.addView(last, new ViewGroup.MarginLayoutParams(-1, -2));
+        TextView title = new TextView(context);
+        title.setId(TITLE);
+        last.addView(title, new ViewGroup.MarginLayoutParams(-2, -2));
+        ImageView icon = new ImageView(context);
+        icon.setId(ICON);
+        last.addView(icon, new ViewGroup.MarginLayoutParams(-2, -2));
+
+        query = new CocoQuery<AbstractViewQuery.DefaultQuery>(root);
+        cursor = new CocoQuery<AbstractViewQuery.DefaultQuery>(root).cursor(true);
+        uncached = new CocoQuery<AbstractViewQuery.DefaultQuery>(root).viewCache(false);
+    }
+
+    @Benchmark
+    public View rawFindViewById() {
+        return root.findViewById(TITLE);
+    }
+
+    @Benchmark
+    public Object id() {
+        return query.id(TITLE);
+    }
+
+    @Benchmark
+    public Object idCursor() {
+        return cursor.id(TITLE);
+    }
+
+    @Benchmark
+    public Object idUncached() {
+        return uncached.id(TITLE);
+    }
+
+    @Benchmark
+    public Object rawTextVisible() {
+        TextView tv = (TextView) root.findViewById(TITLE);
+        tv.setText("Hello");
+        tv.setVisibility(View.VISIBLE);
+        return tv;
+    }
+
+    @Benchmark
+    public Object chainTextVisible() {
+        return query.id(TITLE).text("Hello").visible();
+    }
+
+    @Benchmark
+    public Object cursorTextVisible() {
+        return cursor.id(TITLE).text("Hello").visible();
+    }
+
+    @Benchmark
+    public Object rawImage() {
+        ImageView iv = (ImageView) root.findViewById(ICON);
+        iv.setImageResource(IMAGE_RES);
+        return iv;
+    }
+
+    @Benchmark
+    public Object chainImage() {
+        return query.id(ICON).image(IMAGE_RES);
+    }
+
+    @Benchmark
+    public Object rawMargin() {
+        View view = root.findViewById(ICON);
+        ViewGroup.MarginLayoutParams lp = (ViewGroup.MarginLayoutParams) view.getLayoutParams();
+        int px = (int) TypedValue.applyDimension(TypedValue.COMPLEX_UNIT_DIP, 8,
+                view.getContext().getResources().getDisplayMetrics());
+        lp.setMargins(px, px, px, px);
+        view.setLayoutParams(lp);
+        return view;
+    }
+
+    @Benchmark
+    public Object chainMargin() {
+        return query.id(ICON).margin(8, 8, 8, 8);
+    }
+}
@@ -0,0 +1,11 @@
+package com.cocosw.query;
+
+/**
+ * Stand-in of the R class which is generated from query/src/main/res by android build
+ */
+public final class R {
+    public static final class id {
+        public static final int coco_query_views = 0x7f0a0001;
+        public static final int coco_query_image = 0x7f0a0002;
+    }
+}
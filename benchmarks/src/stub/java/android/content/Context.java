@@ -0,0 +1,15 @@
+package android.content;
+
+import android.content.res.Resources;
+
+/**
+ * Plain JVM stand-in, only what benchmarks execute
+ */
+public class Context {
+
+    private final Resources resources = new Resources();
+
+    public Resources getResources() {
+        return resources;
+    }
+}
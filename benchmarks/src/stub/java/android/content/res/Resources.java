@@ -0,0 +1,15 @@
+package android.content.res;
+
+import android.util.DisplayMetrics;
+
+/**
+ * Plain JVM stand-in, only what benchmarks execute
+ */
+public class Resources {
+
+    private final DisplayMetrics metrics = new DisplayMetrics();
+
+    public DisplayMetrics getDisplayMetrics() {
+        return metrics;
+    }
+}
@@ -0,0 +1,10 @@
+package android.util;
+
+/**
+ * Plain JVM stand-in, only what benchmarks execute
+ */
+public class DisplayMetrics {
+    public float density = 2f;
+    public float scaledDensity = 2f;
+    public float xdpi = 320f;
+}
@@ -0,0 +1,119 @@
+package android.view;
+
+import android.content.Context;
+
+import java.util.HashMap;
+
+/**
+ * Plain JVM stand-in, only what benchmarks execute.
+ * Layout requests are propagated to parents as the real one does.
+ */
+public class View {
+
+    public static final int NO_ID = -1;
+    public static final int VISIBLE = 0;
+    public static final int INVISIBLE = 4;
+    public static final int GONE = 8;
+
+    private final Context context;
+    ViewParent parent;
+    private int id = NO_ID;
+    private Object tag;
+    private HashMap<Integer, Object> keyedTags;
+    private int visibility = VISIBLE;
+    private boolean enabled = true;
+    private ViewGroup.LayoutParams layoutParams;
+    private boolean layoutRequested;
+
+    public View(Context context) {
+        this.context = context;
+    }
+
+    public Context getContext() {
+        return context;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public void setId(int id) {
+        this.id = id;
+    }
+
+    public ViewParent getParent() {
+        return parent;
+    }
+
+    public Object getTag() {
+        return tag;
+    }
+
+    public void setTag(Object tag) {
+        this.tag = tag;
+    }
+
+    public Object getTag(int key) {
+        return keyedTags == null ? null : keyedTags.get(key);
+    }
+
+    public void setTag(int key, Object tag) {
+        if (keyedTags == null) {
+            keyedTags = new HashMap<Integer, Object>();
+        }
+        keyedTags.put(key, tag);
+    }
+
+    public int getVisibility() {
+        return visibility;
+    }
+
+    public void setVisibility(int visibility) {
+        if (this.visibility != visibility) {
+            this.visibility = visibility;
+            requestLayout();
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public ViewGroup.LayoutParams getLayoutParams() {
+        return layoutParams;
+    }
+
+    public void setLayoutParams(ViewGroup.LayoutParams params) {
+        this.layoutParams = params;
+        requestLayout();
+    }
+
+    public void requestLayout() {
+        layoutRequested = true;
+        if (parent != null) {
+            parent.requestLayout();
+        }
+    }
+
+    public boolean isLayoutRequested() {
+        return layoutRequested;
+    }
+
+    public void invalidate() {
+    }
+
+    public final View findViewById(int id) {
+        if (id == NO_ID) {
+            return null;
+        }
+        return findViewTraversal(id);
+    }
+
+    protected View findViewTraversal(int id) {
+        return id == this.id ? this : null;
+    }
+}
@@ -0,0 +1,76 @@
+package android.view;
+
+import android.content.Context;
+
+import java.util.ArrayList;
+
+/**
+ * Plain JVM stand-in, only what benchmarks execute
+ */
+public class ViewGroup extends View implements ViewParent {
+
+    private final ArrayList<View> children = new ArrayList<View>();
+
+    public ViewGroup(Context context) {
+        super(context);
+    }
+
+    public void addView(View child, LayoutParams params) {
+        child.setLayoutParams(params);
+        child.parent = this;
+        children.add(child);
+    }
+
+    public int getChildCount() {
+        return children.size();
+    }
+
+    public View getChildAt(int index) {
+        return children.get(index);
+    }
+
+    @Override
+    protected View findViewTraversal(int id) {
+        if (id == getId()) {
+            return this;
+        }
+        for (int i = 0, size = children.size(); i < size; i++) {
+            View v = children.get(i).findViewTraversal(id);
+            if (v != null) {
+                return v;
+            }
+        }
+        return null;
+    }
+
+    public static class LayoutParams {
+        public static final int MATCH_PARENT = -1;
+        public static final int WRAP_CONTENT = -2;
+
+        public int width;
+        public int height;
+
+        public LayoutParams(int width, int height) {
+            this.width = width;
+            this.height = height;
+        }
+    }
+
+    public static class MarginLayoutParams extends LayoutParams {
+        public int leftMargin;
+        public int topMargin;
+        public int rightMargin;
+        public int bottomMargin;
+
+        public MarginLayoutParams(int width, int height) {
+            super(width, height);
+        }
+
+        public void setMargins(int left, int top, int right, int bottom) {
+            leftMargin = left;
+            topMargin = top;
+            rightMargin = right;
+            bottomMargin = bottom;
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package android.view;
+
+/**
+ * Plain JVM stand-in, only what benchmarks execute
+ */
+public interface ViewParent {
+
+    ViewParent getParent();
+
+    void requestLayout();
+}
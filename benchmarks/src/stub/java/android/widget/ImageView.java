@@ -0,0 +1,43 @@
+package android.widget;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+
+/**
+ * Plain JVM stand-in, only what benchmarks execute
+ */
+public class ImageView extends View {
+
+    private int resource;
+    private Drawable drawable;
+
+    public ImageView(Context context) {
+        super(context);
+    }
+
+    public void setImageResource(int resId) {
+        if (resource != resId) {
+            resource = resId;
+            drawable = null;
+            requestLayout();
+            invalidate();
+        }
+    }
+
+    public void setImageDrawable(Drawable drawable) {
+        resource = 0;
+        this.drawable = drawable;
+        requestLayout();
+        invalidate();
+    }
+
+    public void setImageBitmap(Bitmap bm) {
+        setImageDrawable(null);
+    }
+
+    public Drawable getDrawable() {
+        return drawable;
+    }
+}
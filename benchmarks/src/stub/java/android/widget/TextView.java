@@ -0,0 +1,36 @@
+package android.widget;
+
+import android.content.Context;
+import android.view.View;
+
+/**
+ * Plain JVM stand-in, only what benchmarks execute
+ */
+public class TextView extends View {
+
+    private CharSequence text = "";
+    private int textColor;
+
+    public TextView(Context context) {
+        super(context);
+    }
+
+    public CharSequence getText() {
+        return text;
+    }
+
+    public void setText(CharSequence text) {
+        this.text = text == null ? "" : text;
+        requestLayout();
+        invalidate();
+    }
+
+    public void setTextColor(int color) {
+        this.textColor = color;
+        invalidate();
+    }
+
+    public int getCurrentTextColor() {
+        return textColor;
+    }
+}
@@ -6,6 +6,7 @@ import android.view.View;
 import android.widget.ImageView;
 
 import com.cocosw.query.AbstractViewQuery;
+import com.cocosw.query.QueryFactory;
 import com.squareup.picasso.Callback;
 import com.squareup.picasso.Picasso;
 
@@ -14,6 +15,16 @@ import com.squareup.picasso.Picasso;
  */
 public class ExtViewQuery extends AbstractViewQuery<ExtViewQuery> {
 
+    /**
+     * Register it by CocoQuery.setQueryFactory(ExtViewQuery.FACTORY)
+     */
+    public static final QueryFactory<ExtViewQuery> FACTORY = new QueryFactory<ExtViewQuery>() {
+        @Override
+        public ExtViewQuery create(View view) {
+            return new ExtViewQuery(view);
+        }
+    };
+
     /**
      * Instantiates a new AQuery object.
      *
@@ -3,6 +3,7 @@ package com.cocosw.query;
 import android.app.Activity;
 import android.content.Context;
 import android.content.Intent;
+import android.content.res.ColorStateList;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Rect;
@@ -57,6 +58,27 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
     protected View view;
     protected Object progress;
 
+    /**
+     * Re-targeted cursor, see {@link CocoQuery#cursor(boolean)}
+     */
+    boolean retired;
+
+    /**
+     * Batch which mutations are recorded into, see {@link CocoQuery#beginBatch()}
+     */
+    ViewBatch batch;
+
+    /**
+     * Receiver of the mutations of a chain called off main thread, see {@link CocoQuery#threadSafe(boolean)}.
+     * Such a query has no view, so a method which can't be recorded never touches a view off main thread.
+     */
+    ViewBatch.Record offThread;
+
+    /**
+     * The current call of an off main thread chain has been recorded
+     */
+    private boolean recorded;
+
 
 
     public static class DefaultQuery extends AbstractViewQuery<DefaultQuery> {
@@ -81,8 +103,42 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
     }
 
 
+    private ViewBatch.Record pending() {
+        if (offThread != null) {
+            recorded = true;
+            return offThread;
+        }
+        ViewBatch b = batch;
+        if (b == null || view == null) {
+            return null;
+        }
+        if (b.isClosed()) {
+            batch = null;
+            return null;
+        }
+        return b.of(view);
+    }
+
+    private boolean skipping() {
+        return query != null && query.skipUnchanged;
+    }
+
+    private void skipped() {
+        query.skippedWrites++;
+    }
+
     @SuppressWarnings("unchecked")
     protected T self() {
+        if (retired) {
+            throw new IllegalStateException("This query has been re-targeted by another id()/v() call in cursor mode");
+        }
+        if (offThread != null) {
+            if (!recorded) {
+                throw new IllegalStateException("Only text, textColor, image, enabled, checked, visibility, background, "
+                        + "width, height and margin can be called off main thread");
+            }
+            recorded = false;
+        }
         return (T) this;
     }
 
@@ -95,6 +151,9 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      */
     public T text(int resid) {
 
+        if ((batch != null || offThread != null || skipping()) && context != null) {
+            return text(context.getText(resid));
+        }
         if (view instanceof TextView) {
             TextView tv = (TextView) view;
             tv.setText(resid);
@@ -113,7 +172,7 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
     public T text(int resid, Object... formatArgs) {
         if (context != null) {
             CharSequence text = context.getString(resid, formatArgs);
-            text(text);
+            return text(text);
         }
         return self();
     }
@@ -140,14 +199,33 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      */
     public T text(CharSequence text) {
 
+        ViewBatch.Record p = pending();
+        if (p != null) {
+            p.text(text);
+            return self();
+        }
         if (view instanceof TextView) {
             TextView tv = (TextView) view;
-            tv.setText(text);
+            if (skipping() && sameText(tv.getText(), text)) {
+                skipped();
+            } else {
+                tv.setText(text);
+            }
         }
 
         return self();
     }
 
+    private static boolean sameText(CharSequence current, CharSequence text) {
+        if (current == text) {
+            return true;
+        }
+        if (current instanceof Spanned || text instanceof Spanned) {
+            return false;
+        }
+        return TextUtils.equals(current, text == null ? "" : text);
+    }
+
     /**
      * Set the text of a TextView. Hide the view (gone) if text is empty.
      *
@@ -206,9 +284,18 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      * @return self
      */
     public T text(Spanned text) {
+        ViewBatch.Record p = pending();
+        if (p != null) {
+            p.text(text);
+            return self();
+        }
         if (view instanceof TextView) {
             TextView tv = (TextView) view;
-            tv.setText(text);
+            if (skipping() && tv.getText() == text) {
+                skipped();
+            } else {
+                tv.setText(text);
+            }
         }
         return self();
     }
@@ -221,9 +308,19 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      */
     public T textColor(int color) {
 
+        ViewBatch.Record p = pending();
+        if (p != null) {
+            p.textColor(color);
+            return self();
+        }
         if (view instanceof TextView) {
             TextView tv = (TextView) view;
-            tv.setTextColor(color);
+            ColorStateList colors = tv.getTextColors();
+            if (skipping() && !colors.isStateful() && colors.getDefaultColor() == color) {
+                skipped();
+            } else {
+                tv.setTextColor(color);
+            }
         }
         return self();
     }
@@ -296,18 +393,51 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      */
     public T image(int resid) {
 
+        ViewBatch.Record p = pending();
+        if (p != null) {
+            p.image(resid);
+            return self();
+        }
         if (view instanceof ImageView) {
             ImageView iv = (ImageView) view;
-            if (resid == 0) {
-                iv.setImageBitmap(null);
+            if (!skipping()) {
+                setImage(iv, resid);
             } else {
-                iv.setImageResource(resid);
+                Object tag = iv.getTag(R.id.coco_query_image);
+                ImageMark mark = tag instanceof ImageMark ? (ImageMark) tag : null;
+                if (mark != null && mark.resid == resid && mark.drawable == iv.getDrawable()) {
+                    skipped();
+                } else {
+                    setImage(iv, resid);
+                    if (mark == null) {
+                        mark = new ImageMark();
+                        iv.setTag(R.id.coco_query_image, mark);
+                    }
+                    mark.resid = resid;
+                    mark.drawable = iv.getDrawable();
+                }
             }
         }
 
         return self();
     }
 
+    private static void setImage(ImageView iv, int resid) {
+        if (resid == 0) {
+            iv.setImageBitmap(null);
+        } else {
+            iv.setImageResource(resid);
+        }
+    }
+
+    /**
+     * Image resource last set by {@link #image(int)}, it's still valid only if the drawable isn't changed
+     */
+    private static final class ImageMark {
+        int resid;
+        Drawable drawable;
+    }
+
     /**
      * Set the image of an ImageView.
      *
@@ -317,6 +447,11 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      */
     public T image(Drawable drawable) {
 
+        ViewBatch.Record p = pending();
+        if (p != null) {
+            p.image(drawable);
+            return self();
+        }
         if (view instanceof ImageView) {
             ImageView iv = (ImageView) view;
             iv.setImageDrawable(drawable);
@@ -333,6 +468,11 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      */
     public T image(Bitmap bm) {
 
+        ViewBatch.Record p = pending();
+        if (p != null) {
+            p.image(bm);
+            return self();
+        }
         if (view instanceof ImageView) {
             ImageView iv = (ImageView) view;
             iv.setImageBitmap(bm);
@@ -351,6 +491,9 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
 
         if (view != null) {
             view.setTag(tag);
+            if (query != null) {
+                query.reindex();
+            }
         }
 
         return self();
@@ -381,8 +524,17 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      */
     public T enabled(boolean enabled) {
 
+        ViewBatch.Record p = pending();
+        if (p != null) {
+            p.enabled(enabled);
+            return self();
+        }
         if (view != null) {
-            view.setEnabled(enabled);
+            if (skipping() && view.isEnabled() == enabled) {
+                skipped();
+            } else {
+                view.setEnabled(enabled);
+            }
         }
 
         return self();
@@ -396,9 +548,18 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      */
     public T checked(boolean checked) {
 
+        ViewBatch.Record p = pending();
+        if (p != null) {
+            p.checked(checked);
+            return self();
+        }
         if (view instanceof CompoundButton) {
             CompoundButton cb = (CompoundButton) view;
-            cb.setChecked(checked);
+            if (skipping() && cb.isChecked() == checked) {
+                skipped();
+            } else {
+                cb.setChecked(checked);
+            }
         }
 
         return self();
@@ -501,8 +662,17 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      */
     public T visibility(int visibility) {
 
-        if (view != null && view.getVisibility() != visibility) {
-            view.setVisibility(visibility);
+        ViewBatch.Record p = pending();
+        if (p != null) {
+            p.visibility(visibility);
+            return self();
+        }
+        if (view != null) {
+            if (view.getVisibility() != visibility) {
+                view.setVisibility(visibility);
+            } else if (skipping()) {
+                skipped();
+            }
         }
 
         return self();
@@ -516,6 +686,11 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      * @return self
      */
     public T background(int id) {
+        ViewBatch.Record p = pending();
+        if (p != null) {
+            p.background(id);
+            return self();
+        }
         if (view != null) {
             if (id != 0) {
                 view.setBackgroundResource(id);
@@ -539,6 +714,11 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      * @return self
      */
     public T backgroundColor(int color) {
+        ViewBatch.Record p = pending();
+        if (p != null) {
+            p.backgroundColor(color);
+            return self();
+        }
         if (view != null) {
             view.setBackgroundColor(color);
         }
@@ -553,8 +733,8 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      */
     public T backgroundColorId(int colorId) {
 
-        if (view != null) {
-            view.setBackgroundColor(context.getResources().getColor(colorId));
+        if (view != null || offThread != null) {
+            return backgroundColor(context.getResources().getColor(colorId));
         }
 
         return self();
@@ -761,6 +941,10 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
      */
     public T margin(float leftDip, float topDip, float rightDip, float bottomDip) {
 
+        if (offThread != null) {
+            pending().margin(dip2pixel(leftDip), dip2pixel(topDip), dip2pixel(rightDip), dip2pixel(bottomDip));
+            return self();
+        }
         if (view != null) {
 
             ViewGroup.LayoutParams lp = view.getLayoutParams();
@@ -772,6 +956,11 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
                 int right = dip2pixel(rightDip);
                 int bottom = dip2pixel(bottomDip);
 
+                ViewBatch.Record p = pending();
+                if (p != null) {
+                    p.margin(left, top, right, bottom);
+                    return self();
+                }
                 ((ViewGroup.MarginLayoutParams) lp).setMargins(left, top, right, bottom);
                 view.setLayoutParams(lp);
             }
@@ -837,14 +1026,23 @@ public abstract class AbstractViewQuery<T extends AbstractViewQuery<T>> {
 
     private void size(boolean width, int n, boolean dip) {
 
-        if (view != null) {
-
-            ViewGroup.LayoutParams lp = view.getLayoutParams();
+        if (view != null || offThread != null) {
 
             if (n > 0 && dip) {
                 n = dip2pixel(n);
             }
 
+            ViewBatch.Record p = pending();
+            if (p != null) {
+                if (width) {
+                    p.width(n);
+                } else {
+                    p.height(n);
+                }
+                return;
+            }
+
+            ViewGroup.LayoutParams lp = view.getLayoutParams();
             if (width) {
                 lp.width = n;
             } else {
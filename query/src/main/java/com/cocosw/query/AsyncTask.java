@@ -19,20 +19,17 @@ package com.cocosw.query;
 import android.os.*;
 import android.os.Process;
 
-import java.util.ArrayDeque;
-import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.FutureTask;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * <p>AsyncTask enables proper and easy use of the UI thread. This class allows to
@@ -180,34 +177,16 @@ import java.util.concurrent.atomic.AtomicInteger;
 abstract class AsyncTask<Params, Progress, Result> {
     private static final String LOG_TAG = "AsyncTask";
 
-    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
-    private static final int CORE_POOL_SIZE = CPU_COUNT + 1;
-    private static final int MAXIMUM_POOL_SIZE = CPU_COUNT * 2 + 1;
-    private static final int KEEP_ALIVE = 1;
-
-    private static final ThreadFactory sThreadFactory = new ThreadFactory() {
-        private final AtomicInteger mCount = new AtomicInteger(1);
-
-        public Thread newThread(Runnable r) {
-            return new Thread(r, "AsyncTask #" + mCount.getAndIncrement());
-        }
-    };
-
-    private static final BlockingQueue<Runnable> sPoolWorkQueue =
-            new LinkedBlockingQueue<Runnable>(128);
-
     /**
      * An {@link java.util.concurrent.Executor} that can be used to execute tasks in parallel.
      */
-    public static final Executor THREAD_POOL_EXECUTOR
-            = new ThreadPoolExecutor(CORE_POOL_SIZE, MAXIMUM_POOL_SIZE, KEEP_ALIVE,
-                    TimeUnit.SECONDS, sPoolWorkQueue, sThreadFactory);
+    public static final Executor THREAD_POOL_EXECUTOR = TaskExecutor.CPU;
 
     /**
      * An {@link java.util.concurrent.Executor} that executes tasks one at a time in serial
      * order.  This serialization is global to a particular process.
      */
-    public static final Executor SERIAL_EXECUTOR = new SerialExecutor();
+    public static final Executor SERIAL_EXECUTOR = KeyedSerialExecutor.on(new Object(), THREAD_POOL_EXECUTOR);
 
     private static final int MESSAGE_POST_RESULT = 0x1;
     private static final int MESSAGE_POST_PROGRESS = 0x2;
@@ -222,32 +201,10 @@ abstract class AsyncTask<Params, Progress, Result> {
     
     private final AtomicBoolean mCancelled = new AtomicBoolean();
     private final AtomicBoolean mTaskInvoked = new AtomicBoolean();
-
-    private static class SerialExecutor implements Executor {
-        final ArrayDeque<Runnable> mTasks = new ArrayDeque<Runnable>();
-        Runnable mActive;
-
-        public synchronized void execute(final Runnable r) {
-            mTasks.offer(new Runnable() {
-                public void run() {
-                    try {
-                        r.run();
-                    } finally {
-                        scheduleNext();
-                    }
-                }
-            });
-            if (mActive == null) {
-                scheduleNext();
-            }
-        }
-
-        protected synchronized void scheduleNext() {
-            if ((mActive = mTasks.poll()) != null) {
-                THREAD_POOL_EXECUTOR.execute(mActive);
-            }
-        }
-    }
+    private final AtomicBoolean mResultPosted = new AtomicBoolean();
+    private volatile Exception mCancelCause;
+    private volatile Executor mExecutor;
+    private volatile boolean mFrameAligned;
 
     /**
      * Indicates the current status of the task. Each status will be set only once
@@ -292,21 +249,7 @@ abstract class AsyncTask<Params, Progress, Result> {
             }
         };
 
-        mFuture = new FutureTask<Result>(mWorker) {
-            @Override
-            protected void done() {
-                try {
-                    postResultIfNotInvoked(get());
-                } catch (InterruptedException e) {
-                    android.util.Log.w(LOG_TAG, e);
-                } catch (ExecutionException e) {
-                    throw new RuntimeException("An error occured while executing doInBackground()",
-                            e.getCause());
-                } catch (CancellationException e) {
-                    postResultIfNotInvoked(null);
-                }
-            }
-        };
+        mFuture = new PriorityFuture(mWorker);
     }
 
     private void postResultIfNotInvoked(Result result) {
@@ -317,11 +260,74 @@ abstract class AsyncTask<Params, Progress, Result> {
     }
 
     private Result postResult(Result result) {
+        // only once, an aborted task has posted already
+        if (mResultPosted.compareAndSet(false, true)) {
+            sendResult(result);
+        }
+        return result;
+    }
+
+    private void sendResult(Result result) {
         @SuppressWarnings("unchecked")
-        Message message = sHandler.obtainMessage(MESSAGE_POST_RESULT,
-                new AsyncTaskResult<Result>(this, result));
+        AsyncTaskResult<Result> posted = new AsyncTaskResult<Result>(this, result);
+        if (mFrameAligned) {
+            FrameBatch.post(posted);
+            return;
+        }
+        Message message = sHandler.obtainMessage(MESSAGE_POST_RESULT, posted);
         message.sendToTarget();
-        return result;
+    }
+
+    /**
+     * Deliver the result together with the results of other tasks at the next frame,
+     * instead of one main looper message per task.
+     *
+     * @param frameAligned
+     */
+    final void setFrameAligned(boolean frameAligned) {
+        mFrameAligned = frameAligned;
+    }
+
+    /**
+     * Cancel this task for a reason, e.g. its executor rejected it or it timed out.
+     * {@link #onCancelled(Object)} is invoked on the UI thread and {@link #getCancelCause()} returns the reason.
+     * <p/>
+     * Nothing happens if the result is already posted. A queued task is removed from the queue of its executor,
+     * and {@link #onCancelled(Object)} doesn't wait for a running {@link #doInBackground(Object[])} to return.
+     *
+     * @param cause     reason of the cancellation
+     * @param interrupt interrupt the thread running the task
+     * @return false if the task has already finished
+     */
+    final boolean abort(Exception cause, boolean interrupt) {
+        if (!mResultPosted.compareAndSet(false, true)) {
+            return false;
+        }
+        mCancelCause = cause;
+        mCancelled.set(true);
+        mFuture.cancel(interrupt);
+        final Executor exec = mExecutor;
+        if (exec instanceof ThreadPoolExecutor) {
+            ((ThreadPoolExecutor) exec).remove(mFuture);
+        }
+        sendResult(null);
+        return true;
+    }
+
+    /**
+     * @return the reason given to {@link #abort(Exception, boolean)}, or null
+     */
+    protected final Exception getCancelCause() {
+        return mCancelCause;
+    }
+
+    /**
+     * Priority of this task in the work queue of a {@link TaskExecutor}, read when the task is queued.
+     *
+     * @return {@link CocoTask.Priority#NORMAL} by default
+     */
+    protected CocoTask.Priority getPriority() {
+        return CocoTask.Priority.NORMAL;
     }
 
     /**
@@ -590,6 +596,7 @@ abstract class AsyncTask<Params, Progress, Result> {
         onPreExecute();
 
         mWorker.mParams = params;
+        mExecutor = exec;
         exec.execute(mFuture);
 
         return this;
@@ -654,6 +661,84 @@ abstract class AsyncTask<Params, Progress, Result> {
         }
     }
 
+    private final class PriorityFuture extends FutureTask<Result> implements PriorityTaskQueue.Prioritized {
+
+        PriorityFuture(Callable<Result> callable) {
+            super(callable);
+        }
+
+        @Override
+        public CocoTask.Priority priority() {
+            return getPriority();
+        }
+
+        @Override
+        public void reject(RejectedExecutionException e) {
+            abort(e, false);
+        }
+
+        @Override
+        protected void done() {
+            try {
+                postResultIfNotInvoked(get());
+            } catch (InterruptedException e) {
+                android.util.Log.w(LOG_TAG, e);
+            } catch (ExecutionException e) {
+                throw new RuntimeException("An error occured while executing doInBackground()",
+                        e.getCause());
+            } catch (CancellationException e) {
+                postResultIfNotInvoked(null);
+            }
+        }
+    }
+
+    /**
+     * Results of frame aligned tasks, drained at the next frame under a time budget,
+     * the results left when the budget is spent are delivered at the frame after.
+     */
+    private static final class FrameBatch implements Runnable {
+        private static final long BUDGET_NANOS = TimeUnit.MILLISECONDS.toNanos(8);
+        private static final FrameBatch INSTANCE = new FrameBatch();
+
+        private final ConcurrentLinkedQueue<AsyncTaskResult<?>> results = new ConcurrentLinkedQueue<AsyncTaskResult<?>>();
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+
+        static void post(AsyncTaskResult<?> result) {
+            INSTANCE.results.offer(result);
+            INSTANCE.schedule();
+        }
+
+        private void schedule() {
+            if (scheduled.compareAndSet(false, true)) {
+                Frames.post(this);
+            }
+        }
+
+        @Override
+        public void run() {
+            final long deadline = System.nanoTime() + BUDGET_NANOS;
+            AsyncTaskResult<?> result;
+            while ((result = results.poll()) != null) {
+                finish(result);
+                if (System.nanoTime() - deadline >= 0 && !results.isEmpty()) {
+                    // spill the rest to the next frame, still scheduled
+                    Frames.post(this);
+                    return;
+                }
+            }
+            scheduled.set(false);
+            // a result offered after the last poll found the batch scheduled
+            if (!results.isEmpty()) {
+                schedule();
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <Data> void finish(AsyncTaskResult<Data> result) {
+            result.mTask.finish(result.mData[0]);
+        }
+    }
+
     private static abstract class WorkerRunnable<Params, Result> implements Callable<Result> {
         Params[] mParams;
     }
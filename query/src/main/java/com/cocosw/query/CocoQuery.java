@@ -9,8 +9,9 @@ import android.os.Bundle;
 import android.view.View;
 import android.widget.Toast;
 
-import java.lang.reflect.Constructor;
-import java.util.WeakHashMap;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * Bring chain style programming to Android UI development
@@ -21,17 +22,81 @@ public class CocoQuery<T extends AbstractViewQuery<T>> {
     protected Activity act;
     private Context context;
 
-    private static Class query = AbstractViewQuery.DefaultQuery.class;
+    private static QueryFactory<?> factory = QueryFactory.DEFAULT;
+
+    private static boolean debug;
+    private static boolean skipUnchangedDefault;
+
+    private boolean cursor;
+    private T current;
+
+    private ViewBatch batch;
+    private int batchDepth;
+
+    boolean skipUnchanged = skipUnchangedDefault;
+    int skippedWrites;
+
+    private ViewIndex index;
+
+    private volatile UiQueue uiQueue;
+
+    private boolean cacheEnabled = true;
+    private ViewCache viewCache = new ViewCache();
+    private int cacheHits;
+    private int cacheMisses;
+
+    private Executor executor;
+
+    private TaskRegistry registry;
 
     /**
      * Set your customized ViewQuery class
+     * <p/>
+     * Constructor will be looked up only once, use {@link #setQueryFactory(QueryFactory)} to avoid reflection totally.
      *
      * @param myclass
      */
+    @SuppressWarnings({"unchecked", "rawtypes"})
     public static void setQueryClass(Class myclass) {
-        query = myclass;
+        if (myclass == AbstractViewQuery.DefaultQuery.class) {
+            factory = QueryFactory.DEFAULT;
+        } else {
+            factory = new QueryFactory.ReflectiveFactory(myclass);
+        }
     }
 
+    /**
+     * Set the factory which creates your customized ViewQuery
+     *
+     * @param queryFactory
+     */
+    public static void setQueryFactory(QueryFactory<?> queryFactory) {
+        if (queryFactory == null) {
+            throw new IllegalArgumentException("QueryFactory can't be null");
+        }
+        factory = queryFactory;
+    }
+
+
+    /**
+     * Enable debug checks, for example using a cursor query after it was re-targeted.
+     * Don't enable it in release build.
+     *
+     * @param enable
+     */
+    public static void setDebug(boolean enable) {
+        debug = enable;
+    }
+
+    /**
+     * Skip the write when view already has the same value, for CocoQuery created after this call.
+     *
+     * @param enable
+     * @see #skipUnchanged(boolean)
+     */
+    public static void setSkipUnchanged(boolean enable) {
+        skipUnchangedDefault = enable;
+    }
 
     /**
      * Instantiates a new AQuery object.
@@ -97,6 +162,9 @@ public class CocoQuery<T extends AbstractViewQuery<T>> {
      * @return
      */
     public T v(View view) {
+        if (uiQueue != null && !Frames.isMainThread()) {
+            return offThread(view, View.NO_ID);
+        }
         return create(view);
     }
 
@@ -107,19 +175,99 @@ public class CocoQuery<T extends AbstractViewQuery<T>> {
      * @return
      */
     public T v(int id) {
+        if (uiQueue != null && !Frames.isMainThread()) {
+            return offThread(null, id);
+        }
         return create(findView(id));
     }
 
     /**
      * replace root view with given view
+     * <p/>
+     * The id lookup table is kept with the view, so binding the same row of adapter again
+     * doesn't need to call findViewById, just like a ViewHolder
+     *
      * @param view
      * @return
      */
     public CocoQuery<T> recycle(View view) {
+        if (cacheEnabled) {
+            // also for the root given to the constructor, its cache isn't kept with the view yet
+            viewCache = cacheOf(view);
+        }
+        if (view != root && index != null) {
+            index.release();
+            index = null;
+        }
         this.root = view;
         return this;
     }
 
+    private static ViewCache cacheOf(View view) {
+        if (view == null) {
+            return new ViewCache();
+        }
+        Object tag = view.getTag(R.id.coco_query_views);
+        if (tag instanceof ViewCache) {
+            return (ViewCache) tag;
+        }
+        ViewCache cache = new ViewCache();
+        view.setTag(R.id.coco_query_views, cache);
+        return cache;
+    }
+
+    /**
+     * Cache the result of id lookup for current root view, it's enabled by default.
+     *
+     * @param enable
+     * @return
+     */
+    public CocoQuery<T> viewCache(boolean enable) {
+        cacheEnabled = enable;
+        if (!enable) {
+            viewCache = null;
+        } else if (viewCache == null) {
+            viewCache = new ViewCache();
+        }
+        return this;
+    }
+
+    /**
+     * Skip text/textColor/visibility/enabled/checked/image(int) when the view already has the same value,
+     * so re-binding the same data doesn't trigger measure and layout again.
+     * <p/>
+     * Text is compared only when neither of old and new text is styled, image resource is compared
+     * with the one last set by this library.
+     *
+     * @param enable
+     * @return
+     */
+    public CocoQuery<T> skipUnchanged(boolean enable) {
+        this.skipUnchanged = enable;
+        return this;
+    }
+
+    /**
+     * @return how many writes have been skipped because of {@link #skipUnchanged(boolean)}
+     */
+    public int getSkippedWrites() {
+        return skippedWrites;
+    }
+
+    /**
+     * @return how many id lookups have been served by view cache
+     */
+    public int getCacheHits() {
+        return cacheHits;
+    }
+
+    /**
+     * @return how many id lookups have walked the view tree
+     */
+    public int getCacheMisses() {
+        return cacheMisses;
+    }
+
 
     /**
      * Select view, and start the chain
@@ -131,42 +279,297 @@ public class CocoQuery<T extends AbstractViewQuery<T>> {
         return v(id);
     }
 
+    /**
+     * Start recording mutations, text/textColor/visibility/enabled/checked/background/image/margin/width/height
+     * of the chains started after this call won't be applied until {@link #commit()}.
+     * Only the last write of each property is applied, and layout params are set only once per view.
+     * <p/>
+     * Other methods of the chain are still applied immediately.
+     *
+     * @return
+     */
+    public CocoQuery<T> beginBatch() {
+        if (batchDepth++ == 0) {
+            batch = new ViewBatch(this);
+        }
+        return this;
+    }
 
-    private T create(View view) {
+    /**
+     * Apply the mutations recorded since {@link #beginBatch()}
+     */
+    public void commit() {
+        ViewBatch b = endBatch();
+        if (b != null) {
+            b.apply();
+        }
+    }
 
-        T result = null;
+    /**
+     * Apply the mutations recorded since {@link #beginBatch()} at the next frame
+     */
+    public void commitOnNextFrame() {
+        ViewBatch b = endBatch();
+        if (b != null && !b.isEmpty()) {
+            Frames.post(b);
+        }
+    }
 
+    /**
+     * Run the chains in one batch, see {@link #beginBatch()}
+     *
+     * @param chains
+     */
+    public void batch(Runnable chains) {
+        beginBatch();
         try {
-            Constructor<T> c = getConstructor();
-            result = (T) c.newInstance(view);
-            result.act = act;
-            result.context = getContext();
+            chains.run();
+        } finally {
+            commit();
+        }
+    }
+
+    private ViewBatch endBatch() {
+        if (batchDepth == 0) {
+            throw new IllegalStateException("commit() without beginBatch()");
+        }
+        if (--batchDepth > 0) {
+            return null;
+        }
+        ViewBatch b = batch;
+        batch = null;
+        b.close();
+        return b;
+    }
+
+    /**
+     * Select views of ids, all views are looked up in one traversal of view tree.
+     * Ids which can't be found are ignored.
+     *
+     * @param ids
+     * @return group of found views
+     */
+    public QueryGroup<T> ids(int... ids) {
+        checkMainThread();
+        View[] found = new View[ids.length];
+        int missing = ids.length;
+        View container = container();
+        if (container != null) {
+            if (viewCache != null) {
+                for (int i = 0; i < ids.length; i++) {
+                    found[i] = viewCache.get(ids[i], container);
+                    if (found[i] != null) {
+                        cacheHits++;
+                        missing--;
+                    } else {
+                        cacheMisses++;
+                    }
+                }
+            }
+            ViewTree.find(container, ids, found, missing);
+            if (viewCache != null) {
+                for (int i = 0; i < ids.length; i++) {
+                    if (found[i] != null) {
+                        viewCache.put(ids[i], found[i]);
+                    }
+                }
+            }
+        }
+        return group(found);
+    }
+
+    /**
+     * Select all views which are instance of given class.
+     * <p/>
+     * Views are indexed on first call, the index is rebuilt on the next call after the tree is laid out again,
+     * e.g. when views are added or removed.
+     *
+     * @param clz
+     * @return group of found views
+     */
+    public QueryGroup<T> find(Class<? extends View> clz) {
+        checkMainThread();
+        ViewIndex i = index();
+        return group(i == null ? new View[0] : i.find(clz));
+    }
+
+    /**
+     * Select all views which have given tag, see {@link #find(Class)} for index.
+     * <p/>
+     * Tag set by {@link AbstractViewQuery#tag(Object)} drops the index immediately, a tag set on the view
+     * directly is seen after the next layout, or call {@link #reindex()}.
+     *
+     * @param tag
+     * @return group of found views
+     */
+    public QueryGroup<T> findByTag(Object tag) {
+        checkMainThread();
+        ViewIndex i = index();
+        return group(i == null ? new View[0] : i.findByTag(tag));
+    }
+
+    /**
+     * Drop the index used by {@link #find(Class)} and {@link #findByTag(Object)}
+     *
+     * @return
+     */
+    public CocoQuery<T> reindex() {
+        if (index != null) {
+            index.invalidate();
+        }
+        return this;
+    }
+
+    private ViewIndex index() {
+        if (index == null) {
+            View container = container();
+            if (container == null) {
+                return null;
+            }
+            index = new ViewIndex(container);
+        }
+        return index;
+    }
+
+    QueryGroup<T> group(View[] views) {
+        int count = 0;
+        for (View view : views) {
+            if (view != null) {
+                count++;
+            }
+        }
+        View[] matched = views;
+        if (count != views.length) {
+            matched = new View[count];
+            count = 0;
+            for (View view : views) {
+                if (view != null) {
+                    matched[count++] = view;
+                }
+            }
+        }
+        T query = newQuery(null);
+        query.batch = batch;
+        return new QueryGroup<T>(query, matched);
+    }
+
+    /**
+     * Allow chains to be called from background thread, for example in {@link CocoTask#backgroundWork()}.
+     * <p/>
+     * Off main thread, the view of id is looked up on main thread, and text/textColor/visibility/enabled/checked/
+     * background/image/margin/width/height are queued and posted to main thread in batches, the order
+     * of writes to the same view is kept. Other chain methods throw {@link IllegalStateException} off main thread,
+     * and getters like {@link AbstractViewQuery#getView()} return null there. Group selectors {@link #ids(int...)},
+     * {@link #find(Class)} and {@link #findByTag(Object)} throw {@link IllegalStateException} off main thread.
+     *
+     * @param enable
+     * @return
+     */
+    public CocoQuery<T> threadSafe(boolean enable) {
+        if (!enable) {
+            uiQueue = null;
+        } else if (uiQueue == null) {
+            uiQueue = new UiQueue(this);
+        }
+        return this;
+    }
+
+    /**
+     * Group selectors walk the view tree and their group writes to views directly, they can't be recorded
+     */
+    private void checkMainThread() {
+        if (uiQueue != null && !Frames.isMainThread()) {
+            throw new IllegalStateException("Only id() and v() can select views off main thread");
+        }
+    }
+
+    private T offThread(View view, int id) {
+        UiQueue queue = uiQueue;
+        // the query never holds the view, only the main thread touches it
+        T result = newQuery(null);
+        result.offThread = queue.target(view, id);
+        return result;
+    }
+
+    /**
+     * Cursor mode, one query instance is reused and re-targeted on every {@link #id(int)} / {@link #v(View)} call,
+     * so no object is allocated in getView() of adapter.
+     * <p/>
+     * The returned query is only valid until the next id()/v() call on the same CocoQuery, which means
+     * <ul>
+     * <li>Don't keep it in field or pass it to other method, call {@link AbstractViewQuery#getView()} if you need the view</li>
+     * <li>Don't select another view in the middle of a chain, e.g. q.id(a).text(format(q.id(b).getTag())),
+     * the rest of chain will be applied to view b</li>
+     * </ul>
+     * With {@link #setDebug(boolean)} enabled, a new query is created every time and the old one
+     * throws IllegalStateException if it's used after been re-targeted.
+     *
+     * @param enable
+     * @return
+     */
+    public CocoQuery<T> cursor(boolean enable) {
+        this.cursor = enable;
+        if (!enable) {
+            current = null;
+        }
+        return this;
+    }
+
+
+    private T create(View view) {
+        T result;
+        if (!cursor) {
+            result = newQuery(view);
+        } else if (current != null && !debug) {
+            result = current;
+            result.view = view;
             result.root = root;
-            result.query = this;
-        } catch (Exception e) {
-            e.printStackTrace();
-            throw new IllegalStateException("Please set your own ViewQuery by setViewQuery() method");
+        } else {
+            if (current != null) {
+                current.retired = true;
+            }
+            result = current = newQuery(view);
         }
+        result.batch = batch;
         return result;
+    }
 
+    @SuppressWarnings("unchecked")
+    T newQuery(View view) {
+        T result = (T) factory.create(view);
+        result.act = act;
+        result.context = getContext();
+        result.root = root;
+        result.query = this;
+        return result;
     }
 
-    private Constructor getConstructor() {
-        try {
-            return (Constructor<T>) query.getConstructor(View.class);
-        } catch (Exception e) {
-            //should never happen
-            e.printStackTrace();
+    private View container() {
+        if (root != null) {
+            return root;
+        }
+        if (act != null) {
+            return act.getWindow().getDecorView();
         }
         return null;
     }
 
-    private View findView(int id) {
-        View result = null;
-        if (root != null) {
-            result = root.findViewById(id);
-        } else if (act != null) {
-            result = act.findViewById(id);
+    View findView(int id) {
+        View container = container();
+        if (container == null) {
+            return null;
+        }
+        if (viewCache != null) {
+            View cached = viewCache.get(id, container);
+            if (cached != null) {
+                cacheHits++;
+                return cached;
+            }
+            cacheMisses++;
+        }
+        View result = container.findViewById(id);
+        if (result != null && viewCache != null) {
+            viewCache.put(id, result);
         }
         return result;
     }
@@ -369,35 +772,92 @@ public class CocoQuery<T extends AbstractViewQuery<T>> {
         builder.create().show();
     }
 
+    /**
+     * Executor of the tasks started by this query which don't choose one by {@link CocoTask#executor(Executor)}
+     *
+     * @param executor executor, null to use {@link CocoTask#setDefaultExecutor(Executor)}
+     * @return
+     */
+    public CocoQuery<T> executor(Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Start the task, it's cancelled by {@link #destroy()}
+     *
+     * @param task
+     * @return
+     */
     public CocoQuery task(final CocoTask<?> task) {
-        taskpool.put(task.hashCode(), task);
-        if (act!=null)
+        if (executor != null) {
+            task.fallbackExecutor(executor);
+        }
+        if (!registry().add(task)) {
+            return this;
+        }
+        if (act != null) {
+            registry.bind(act);
             task.async(act);
-        else
+        } else {
             task.async(getContext());
+        }
         return this;
     }
 
-    private final WeakHashMap<Integer, CocoTask<?>> taskpool = new WeakHashMap<Integer, CocoTask<?>>();
+    /**
+     * Run the works of the tasks in parallel with one combined callback
+     *
+     * @param tasks
+     * @param listener gets the outcome of each task, in the order of the tasks
+     * @return the started group
+     */
+    public TaskGroup tasks(final Collection<? extends CocoTask<?>> tasks,
+                           final CocoTask.Listener<? super List<TaskGroup.Outcome>> listener) {
+        return tasks(tasks, false, listener);
+    }
 
     /**
-     * Cancle all the task in pool
+     * Run the works of the tasks in parallel with one combined callback, the group is configured before it starts
      *
-     * @return
+     * @param tasks
+     * @param failFast cancel the other works when one fails, see {@link TaskGroup#failFast()}
+     * @param listener gets the outcome of each task, in the order of the tasks
+     * @return the started group
      */
-    private CocoQuery CleanAllTask() {
-        for (final CocoTask<?> reference : taskpool.values()) {
-            if (reference != null) {
-                reference.cancel();
-            }
+    public TaskGroup tasks(final Collection<? extends CocoTask<?>> tasks, final boolean failFast,
+                           final CocoTask.Listener<? super List<TaskGroup.Outcome>> listener) {
+        final TaskGroup group = CocoTask.all(tasks);
+        if (failFast) {
+            group.failFast();
         }
-        return this;
+        group.listen(listener);
+        task(group);
+        return group;
+    }
+
+    private TaskRegistry registry() {
+        if (registry == null) {
+            registry = new TaskRegistry();
+        }
+        return registry;
     }
 
-    @Override
-    protected void finalize() throws Throwable {
-        super.finalize();
-        CleanAllTask();
+    /**
+     * Cancel all the running tasks started by this query, their callbacks won't be called.
+     * <p/>
+     * It's called when the activity of this query is destroyed on Ice Cream Sandwich and above,
+     * call it in onDestroy of your fragment or on older devices. Tasks started after it are ignored.
+     */
+    public void destroy() {
+        registry().destroy();
+    }
+
+    /**
+     * @return how many tasks started by this query are running
+     */
+    public int getTaskCount() {
+        return registry == null ? 0 : registry.size();
     }
 
     /**
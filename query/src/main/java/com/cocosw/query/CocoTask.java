@@ -6,10 +6,20 @@ import android.app.ProgressDialog;
 import android.content.Context;
 import android.content.DialogInterface;
 import android.content.DialogInterface.OnCancelListener;
+import android.util.Pair;
 import android.view.View;
 import android.widget.ProgressBar;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 
 /**
@@ -21,6 +31,48 @@ import java.lang.ref.WeakReference;
 
 public abstract class CocoTask<T> implements OnCancelListener {
 
+    /**
+     * Order of queued tasks in {@link TaskExecutor#CPU} and {@link TaskExecutor#IO}
+     */
+    public enum Priority {
+        /**
+         * Work the user is waiting for, e.g. started by a click
+         */
+        IMMEDIATE,
+        NORMAL,
+        /**
+         * Work the user may need later, it runs when nothing else is queued
+         */
+        PREFETCH
+    }
+
+    /**
+     * A step of a task pipeline, it runs on worker thread
+     *
+     * @param <I> input type
+     * @param <O> output type
+     */
+    public interface Stage<I, O> {
+        O apply(I input) throws Exception;
+    }
+
+    /**
+     * Receives the callbacks of a task, e.g. a task made by {@link #map(Stage)} which can't be overridden
+     *
+     * @param <T>
+     */
+    public interface Listener<T> {
+        void callback(T result);
+
+        void failcallback(T result, Exception e);
+    }
+
+    private static volatile Executor defaultExecutor = TaskExecutor.CPU;
+
+    private static volatile TaskObserver observer;
+
+    private static volatile boolean frameAlignedDefault;
+
     private WeakReference<Object> progress;
 
     private T result;
@@ -30,7 +82,7 @@ public abstract class CocoTask<T> implements OnCancelListener {
 
     public abstract T backgroundWork() throws Exception;
 
-    private AsyncTask<?, ?, ?> task;
+    private volatile AsyncTask<?, ?, ?> task;
 
     private ProgressDialog dialog;
 
@@ -42,12 +94,78 @@ public abstract class CocoTask<T> implements OnCancelListener {
 
     private WeakReference<Activity> act;
 
+    private Executor executor;
 
-    @Override
-    public int hashCode() {
-        int result = task != null ? task.hashCode() : (int) (Math.random() * 1000);
-        result = 31 * result + (act != null ? act.hashCode() : 0);
-        return result;
+    private Priority priority = Priority.NORMAL;
+
+    private Object serialKey;
+
+    /**
+     * Work in flight by key, only accessed on main thread
+     */
+    private static final HashMap<Object, CocoTask<?>> inFlight = new HashMap<Object, CocoTask<?>>();
+
+    private Object key;
+    private CocoTask<?> leader;
+    private ArrayList<CocoTask<?>> followers;
+    private int shares;
+    private boolean detached;
+
+    private TaskCache cache;
+    private long cacheTtl;
+    private boolean revalidate;
+    private boolean revalidating;
+    private T stale;
+    private boolean started;
+
+    private Listener<? super T> listener;
+
+    private long timeoutNanos;
+    private long deadlineMillis;
+    private TaskTimer.Timeout timer;
+    private long expiresAt;
+    private long limitNanos;
+
+    private RetryPolicy retryPolicy;
+    private int attempt;
+    private TaskTimer.Timeout retryWait;
+    private Exception lastError;
+
+    private final ProgressChannel progressChannel = new ProgressChannel(this);
+
+    private boolean frameAligned = frameAlignedDefault;
+
+    TaskRegistry registry;
+
+    /**
+     * Set the executor of the tasks which don't choose one by {@link #executor(Executor)}
+     * or {@link CocoQuery#executor(Executor)}, it's {@link TaskExecutor#CPU} by default.
+     *
+     * @param executor
+     */
+    public static void setDefaultExecutor(Executor executor) {
+        if (executor == null) {
+            throw new IllegalArgumentException("Executor can't be null");
+        }
+        defaultExecutor = executor;
+    }
+
+    /**
+     * Observer of the lifecycle of all tasks, no event is created while it's null
+     *
+     * @param observer observer, e.g. {@link TaskMetrics}, or null to stop observing
+     */
+    public static void setObserver(TaskObserver observer) {
+        CocoTask.observer = observer;
+    }
+
+    /**
+     * Deliver the results of all tasks by frame by default, see {@link #frameAligned(boolean)}
+     *
+     * @param frameAligned
+     */
+    public static void setFrameAlignedDefault(boolean frameAligned) {
+        frameAlignedDefault = frameAligned;
     }
 
     /**
@@ -63,7 +181,9 @@ public abstract class CocoTask<T> implements OnCancelListener {
      * @param result the object
      */
     public void callback(final T result) {
-
+        if (listener != null) {
+            listener.callback(result);
+        }
     }
 
     /**
@@ -72,7 +192,154 @@ public abstract class CocoTask<T> implements OnCancelListener {
      * @param result the object
      */
     public void failcallback(final T result, final Exception e) {
+        if (listener != null) {
+            listener.failcallback(result, e);
+        }
+    }
+
+    /**
+     * Listener of the callbacks, it's called by the default implementation of {@link #callback(Object)}
+     * and {@link #failcallback(Object, Exception)}
+     *
+     * @param listener
+     * @return
+     */
+    public CocoTask<T> listen(final Listener<? super T> listener) {
+        this.listener = listener;
+        return this;
+    }
+
+    /**
+     * A task which runs the work of this task, then passes its result to the stage on the same worker thread.
+     * <p/>
+     * Only the returned task should be started, callbacks of this task are not called.
+     * The returned task has the executor, priority and progress settings of this task.
+     *
+     * @param stage
+     * @param <R>
+     * @return
+     */
+    public <R> CocoTask<R> map(final Stage<? super T, ? extends R> stage) {
+        final CocoTask<T> source = this;
+        return derive(new CocoTask<R>() {
+            @Override
+            public R backgroundWork() throws Exception {
+                return stage.apply(source.backgroundWork());
+            }
+        });
+    }
+
+    /**
+     * A task which runs the work of this task, then the work of the task made by the stage from the result,
+     * both on the same worker thread.
+     * <p/>
+     * Callbacks of this task and the task made by the stage are not called.
+     *
+     * @param stage
+     * @param <R>
+     * @return
+     * @see #map(Stage)
+     */
+    public <R> CocoTask<R> then(final Stage<? super T, ? extends CocoTask<R>> stage) {
+        final CocoTask<T> source = this;
+        return derive(new CocoTask<R>() {
+            @Override
+            public R backgroundWork() throws Exception {
+                return stage.apply(source.backgroundWork()).backgroundWork();
+            }
+        });
+    }
+
+    /**
+     * A task which runs the work of this task and the other task in parallel, and returns both results.
+     * <p/>
+     * The other work is submitted to its executor, and it's run on the same worker thread if it's not started
+     * when this work is done. It fails when one of the works fails.
+     *
+     * @param other
+     * @param <U>
+     * @return
+     * @see #map(Stage)
+     */
+    public <U> CocoTask<Pair<T, U>> zip(final CocoTask<U> other) {
+        final CocoTask<T> source = this;
+        final Executor exec = other.executor != null ? other.executor
+                : executor != null ? executor : defaultExecutor;
+        return derive(new CocoTask<Pair<T, U>>() {
+            @Override
+            public Pair<T, U> backgroundWork() throws Exception {
+                final FutureTask<U> second = new FutureTask<U>(new Callable<U>() {
+                    @Override
+                    public U call() throws Exception {
+                        return other.backgroundWork();
+                    }
+                });
+                try {
+                    exec.execute(second);
+                } catch (RejectedExecutionException e) {
+                    // run it below on this thread
+                }
+                try {
+                    final T first = source.backgroundWork();
+                    // no-op if it's already started by the executor
+                    second.run();
+                    return new Pair<T, U>(first, second.get());
+                } catch (ExecutionException e) {
+                    final Throwable cause = e.getCause();
+                    if (cause instanceof Exception) {
+                        throw (Exception) cause;
+                    }
+                    throw new RuntimeException(cause);
+                } finally {
+                    second.cancel(true);
+                }
+            }
+        });
+    }
+
+    /**
+     * A task which runs the work of this task, and returns the result of the stage instead of failing.
+     *
+     * @param stage gets the exception of the work
+     * @return
+     * @see #map(Stage)
+     */
+    public CocoTask<T> onErrorResume(final Stage<? super Exception, ? extends T> stage) {
+        final CocoTask<T> source = this;
+        return derive(new CocoTask<T>() {
+            @Override
+            public T backgroundWork() throws Exception {
+                try {
+                    return source.backgroundWork();
+                } catch (Exception e) {
+                    return stage.apply(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * A task which runs the works of the tasks in parallel, and calls back once with all their results.
+     *
+     * @param tasks
+     * @return
+     * @see TaskGroup
+     */
+    public static TaskGroup all(final Collection<? extends CocoTask<?>> tasks) {
+        return new TaskGroup(tasks);
+    }
 
+    private <R> CocoTask<R> derive(final CocoTask<R> next) {
+        next.executor = executor;
+        next.priority = priority;
+        next.serialKey = serialKey;
+        next.progress = progress;
+        next.view = view;
+        next.dialogreid = dialogreid;
+        next.dialogcancel = dialogcancel;
+        next.dialogdeterminate = dialogdeterminate;
+        next.frameAligned = frameAligned;
+        return next;
     }
 
     /**
@@ -148,74 +415,188 @@ public abstract class CocoTask<T> implements OnCancelListener {
         return this;
     }
 
+    /**
+     * @deprecated use {@link #onProgress(TaskProgress)}
+     */
+    @Deprecated
     protected void progressUpdate(final String... values) {
         if (null != dialog && !dialog.isIndeterminate()) {
             dialog.setProgress(Integer.valueOf(values[0]));
         }
     }
 
+    /**
+     * Progress published by {@link #publishProgress(long, long, Object)} and its overloads, on main thread.
+     * By default it updates the determinate progress dialog and progress bar.
+     *
+     * @param progress latest progress, valid during this call only
+     */
+    protected void onProgress(final TaskProgress progress) {
+        if (null != dialog && !dialog.isIndeterminate()) {
+            dialog.setProgress(progress.getPercent());
+        }
+        final Object p = this.progress != null ? this.progress.get() : null;
+        if (p instanceof ProgressBar && !((ProgressBar) p).isIndeterminate()) {
+            ((ProgressBar) p).setProgress(progress.getPercent());
+        }
+    }
+
+    void deliverProgress(final TaskProgress progress) {
+        if (running && isActive()) {
+            onProgress(progress);
+        }
+    }
+
+    /**
+     * Publish progress from {@link #backgroundWork()}, it's cheap to call in a tight loop:
+     * updates are coalesced and only the latest one per frame, or per {@link #progressInterval(long, TimeUnit)},
+     * reaches {@link #onProgress(TaskProgress)}.
+     *
+     * @param current count of units done
+     * @param total   count of all units
+     * @param payload object for {@link TaskProgress#getPayload()}, e.g. the last loaded item
+     */
+    protected final void publishProgress(final long current, final long total, final Object payload) {
+        progressChannel.publish(total > 0 ? (double) current / total : 0, current, total, payload);
+    }
+
+    protected final void publishProgress(final long current, final long total) {
+        publishProgress(current, total, null);
+    }
+
+    /**
+     * @param percent progress from 0 to 100
+     */
+    protected final void publishProgress(final int percent) {
+        publishProgress(percent, 100, null);
+    }
+
+    /**
+     * Named apart from the count overloads, so a long count can't widen to a fraction
+     *
+     * @param fraction progress from 0 to 1
+     */
+    protected final void publishFraction(final float fraction) {
+        progressChannel.publish(fraction, -1, -1, null);
+    }
+
+    /**
+     * Deliver progress at most once per interval instead of once per frame
+     *
+     * @param interval least time between two progress callbacks, 0 for once per frame
+     * @param unit
+     * @return
+     */
+    public CocoTask<T> progressInterval(final long interval, final TimeUnit unit) {
+        if (interval < 0) {
+            throw new IllegalArgumentException("Interval can't be negative");
+        }
+        progressChannel.setInterval(unit.toMillis(interval));
+        return this;
+    }
+
 
     void async(final Activity act) {
         this.act = new WeakReference<Activity>(act);
         if (act.isFinishing()) {
+            unregister();
             return;
         }
 
         runtask(act);
     }
 
+    @SuppressWarnings("unchecked")
     private void runtask(final Context act) {
-        task = new AsyncTask<Object, String, T>() {
+        // state of a previous run
+        resetShare();
+        started = false;
+        if (cache != null) {
+            if (key == null) {
+                throw new IllegalStateException("Task with cache must have a key");
+            }
+            final long now = System.nanoTime();
+            final TaskCache.Entry cached = cache.lookup(key, revalidate, now);
+            if (cached != null) {
+                start(act);
+                if (!cached.isExpired(now)) {
+                    deliver((T) cached.value, null);
+                    return;
+                }
+                // show the stale result now, and call back again if the refreshed one is different
+                stale = (T) cached.value;
+                revalidating = true;
+                if (isActive()) {
+                    callback(stale);
+                }
+            }
+        }
+        if (key != null) {
+            final CocoTask<?> shared = inFlight.get(key);
+            if (shared != null) {
+                leader = shared;
+                shared.attach(this);
+                start(act);
+                running = true;
+                return;
+            }
+            inFlight.put(key, this);
+            shares = 1;
+        }
+        attempt = 0;
+        progressChannel.open();
+        armTimer();
+        launch(act);
+        running = true;
+    }
+
+    /**
+     * Run an attempt of the work, {@link #start(Context)} is done by the first one only
+     */
+    private void launch(final Context act) {
+        attempt++;
+        final TaskObserver o = observer;
+        final long submitted = o != null ? System.nanoTime() : 0;
+        final AsyncTask<Object, String, T> work = new AsyncTask<Object, String, T>() {
 
             private Exception e;
+            private long finished;
 
             @Override
             protected void onPostExecute(final T result) {
-                try {
-                    if (e == null) {
-                        if (!isCancelled()) {
-                            if (isActive()) {
-                                callback(result);
-                            }
-
-                        }
-                    } else {
-                        e.printStackTrace();
-                        if (isActive()) {
-                            failcallback(result, e);
-                        }
-                    }
-                } finally {
-                    // 无论如何，关闭progress
-                    showProgress(false);
-                    end();
+                if (e != null && scheduleRetry(act, e)) {
+                    return;
+                }
+                final TaskObserver o = observer;
+                if (o != null && finished != 0) {
+                    o.onCallback(CocoTask.this, System.nanoTime() - finished);
                 }
-                running = false;
+                finish(result, e);
             }
 
             @Override
             protected T doInBackground(final Object... params) {
+                final TaskObserver o = submitted != 0 ? observer : null;
+                final long started = o != null ? System.nanoTime() : 0;
+                if (o != null) {
+                    o.onStart(CocoTask.this, started - submitted);
+                }
                 try {
                     return backgroundWork();
                 } catch (final Exception e) {
                     this.e = e;
+                } finally {
+                    if (o != null) {
+                        finished = System.nanoTime();
+                        o.onFinish(CocoTask.this, finished - started, e);
+                    }
                 }
                 return null;
             }
 
             @Override
             protected void onPreExecute() {
-                if (dialogreid != -1) {
-                    dialog = new ProgressDialog(act);
-                    dialog.setCancelable(dialogcancel);
-                    dialog.setIndeterminate(dialogdeterminate);
-                    dialog.setMessage(act.getText(dialogreid));
-                    if (dialogcancel) {
-                        dialog.setOnCancelListener(CocoTask.this);
-                    }
-                }
-                showProgress(true);
-                pre();
+                start(act);
             }
 
             @Override
@@ -223,13 +604,249 @@ public abstract class CocoTask<T> implements OnCancelListener {
                 progressUpdate(values);
             }
 
+            @Override
+            protected void onCancelled(final T result) {
+                final TaskObserver o = observer;
+                if (o != null) {
+                    o.onCancel(CocoTask.this);
+                }
+                final Exception cause = getCancelCause();
+                if (cause != null) {
+                    finish(null, cause);
+                }
+            }
+
+            @Override
+            protected Priority getPriority() {
+                return priority;
+            }
+
         };
-        execute(task);
-        running = true;
+        work.setFrameAligned(frameAligned);
+        task = work;
+        if (o != null) {
+            o.onSubmit(this);
+        }
+        execute(work);
+    }
+
+    /**
+     * Run the work again after the backoff of the retry policy, no thread is held during the wait
+     *
+     * @return false if the failure is final, true if it is retried or ended as a timeout
+     */
+    private boolean scheduleRetry(final Context act, final Exception e) {
+        if (retryPolicy == null || !retryPolicy.shouldRetry(attempt, e)) {
+            return false;
+        }
+        final long delay = retryPolicy.delayNanos(attempt);
+        if (timer != null && System.nanoTime() + delay - expiresAt >= 0) {
+            // no time left for another attempt
+            finish(null, timedOut(e));
+            return true;
+        }
+        retryWait = TaskTimer.SHARED.schedule(new Runnable() {
+            @Override
+            public void run() {
+                Frames.postMain(new Runnable() {
+                    @Override
+                    public void run() {
+                        retry(act, e);
+                    }
+                });
+            }
+        }, delay, TimeUnit.NANOSECONDS);
+        lastError = e;
+        return true;
+    }
+
+    private void retry(final Context act, final Exception e) {
+        if (retryWait == null || retryWait.isCancelled()) {
+            return;
+        }
+        retryWait = null;
+        if (timer != null && System.nanoTime() - expiresAt >= 0) {
+            finish(null, timedOut(e));
+            return;
+        }
+        launch(act);
+    }
+
+    /**
+     * The time limit passed while waiting for the next attempt, on main thread
+     */
+    private void expireRetry() {
+        if (retryWait != null) {
+            retryWait.cancel();
+            retryWait = null;
+            finish(null, timedOut(lastError));
+        }
+    }
+
+    /**
+     * @param cause failure of the last attempt, or null
+     */
+    private TaskTimeoutException timedOut(final Exception cause) {
+        final TaskTimeoutException e = new TaskTimeoutException("Task " + this + " timed out after "
+                + TimeUnit.NANOSECONDS.toMillis(limitNanos) + "ms");
+        if (cause != null) {
+            e.initCause(cause);
+        }
+        return e;
+    }
+
+    /**
+     * Abort the work when the earlier of timeout and deadline passes, the clock starts before the task is queued
+     * and covers all the attempts and the waits between them
+     */
+    private void armTimer() {
+        if (timeoutNanos <= 0 && deadlineMillis <= 0) {
+            return;
+        }
+        long delay = timeoutNanos > 0 ? timeoutNanos : Long.MAX_VALUE;
+        if (deadlineMillis > 0) {
+            delay = Math.min(delay, TimeUnit.MILLISECONDS.toNanos(deadlineMillis - System.currentTimeMillis()));
+        }
+        limitNanos = Math.max(0, delay);
+        expiresAt = System.nanoTime() + limitNanos;
+        timer = TaskTimer.SHARED.schedule(new Runnable() {
+            @Override
+            public void run() {
+                final AsyncTask<?, ?, ?> work = task;
+                if (work == null || !work.abort(timedOut(null), true)) {
+                    // no attempt running, maybe waiting for a retry
+                    Frames.postMain(new Runnable() {
+                        @Override
+                        public void run() {
+                            expireRetry();
+                        }
+                    });
+                }
+            }
+        }, limitNanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void disarmTimer() {
+        if (timer != null) {
+            timer.cancel();
+            timer = null;
+        }
+    }
+
+    private void start(final Context act) {
+        if (started) {
+            return;
+        }
+        started = true;
+        if (dialogreid != -1) {
+            dialog = new ProgressDialog(act);
+            dialog.setCancelable(dialogcancel);
+            dialog.setIndeterminate(dialogdeterminate);
+            dialog.setMessage(act.getText(dialogreid));
+            if (dialogcancel) {
+                dialog.setOnCancelListener(CocoTask.this);
+            }
+        }
+        showProgress(true);
+        pre();
+    }
+
+    /**
+     * Result of the work is ready, deliver it to this task and the tasks attached to it
+     */
+    private void finish(final T result, final Exception e) {
+        disarmTimer();
+        if (key != null && inFlight.get(key) == this) {
+            inFlight.remove(key);
+        }
+        if (e == null && cache != null) {
+            cache.put(key, result, cacheTtl, TimeUnit.NANOSECONDS);
+        }
+        final ArrayList<CocoTask<?>> attached = followers;
+        followers = null;
+        if (!detached) {
+            deliver(result, e);
+        }
+        if (attached != null) {
+            for (CocoTask<?> follower : attached) {
+                follower.deliverShared(result, e);
+            }
+        }
+        resetShare();
+    }
+
+    private void resetShare() {
+        leader = null;
+        shares = 0;
+        detached = false;
+    }
+
+    private void deliver(final T result, final Exception e) {
+        try {
+            if (e == null) {
+                if (isActive() && !(revalidating && same(stale, result))) {
+                    callback(result);
+                }
+            } else {
+                e.printStackTrace();
+                if (isActive()) {
+                    failcallback(result, e);
+                }
+            }
+        } finally {
+            // 无论如何，关闭progress
+            showProgress(false);
+            end();
+        }
+        progressChannel.close();
+        running = false;
+        started = false;
+        revalidating = false;
+        stale = null;
+        unregister();
+    }
+
+    private void unregister() {
+        if (registry != null) {
+            registry.remove(this);
+            registry = null;
+        }
+    }
+
+    private static boolean same(final Object a, final Object b) {
+        return a == b || (a != null && a.equals(b));
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliverShared(final Object result, final Exception e) {
+        if (!detached) {
+            deliver((T) result, e);
+        }
+        resetShare();
+    }
+
+    private void attach(final CocoTask<?> follower) {
+        if (followers == null) {
+            followers = new ArrayList<CocoTask<?>>(2);
+        }
+        followers.add(follower);
+        shares++;
+    }
+
+    /**
+     * One subscriber of the shared work is gone, cancel the work when nobody is waiting for it
+     */
+    private void release() {
+        if (--shares == 0) {
+            if (inFlight.get(key) == this) {
+                inFlight.remove(key);
+            }
+            cancelWork();
+        }
     }
 
     protected void showProgress(final boolean show) {
-        if (act.get() == null || act.get().isFinishing()) {
+        if (act != null && (act.get() == null || act.get().isFinishing())) {
             return;
         }
         if (progress != null) {
@@ -265,10 +882,194 @@ public abstract class CocoTask<T> implements OnCancelListener {
         return this;
     }
 
+    /**
+     * Run this task on the executor, for example {@link TaskExecutor#IO} for network calls.
+     *
+     * @param executor executor of this task, null to use the one of CocoQuery or the default one
+     * @return
+     */
+    public CocoTask<T> executor(final Executor executor) {
+        this.executor = executor;
+        return this;
+    }
+
+    /**
+     * Deliver the result at the next frame together with the results of other tasks finished meanwhile,
+     * instead of in its own main looper turn. The batch is delivered under a time budget per frame
+     * and the results left wait for the next frame, so a burst of finished tasks doesn't drop frames.
+     *
+     * @param frameAligned true to deliver by frame
+     * @return
+     */
+    public CocoTask<T> frameAligned(final boolean frameAligned) {
+        this.frameAligned = frameAligned;
+        return this;
+    }
+
+    /**
+     * This task blocks on disk or network, run it on the elastic {@link TaskExecutor#IO} pool
+     *
+     * @return
+     */
+    public CocoTask<T> ioBound() {
+        return executor(TaskExecutor.IO);
+    }
+
+    /**
+     * This task keeps a core busy, run it on {@link TaskExecutor#CPU} which is sized by the core count
+     *
+     * @return
+     */
+    public CocoTask<T> cpuBound() {
+        return executor(TaskExecutor.CPU);
+    }
+
+    /**
+     * Priority of this task in the queue of its executor, queued tasks with higher priority start first.
+     * A task which waited too long starts anyway, so PREFETCH work is not starved.
+     *
+     * @param priority
+     * @return
+     */
+    public CocoTask<T> priority(final Priority priority) {
+        if (priority == null) {
+            throw new IllegalArgumentException("Priority can't be null");
+        }
+        this.priority = priority;
+        return this;
+    }
+
+    /**
+     * Run this task after the tasks submitted before with the same key, e.g. name of a table or a file,
+     * tasks with different keys still run in parallel.
+     *
+     * @param key key of the serial order, null to run in parallel
+     * @return
+     */
+    public CocoTask<T> serialOn(final Object key) {
+        this.serialKey = key;
+        return this;
+    }
+
+    /**
+     * Key of the work of this task, while a task with the same key is running this task doesn't run
+     * {@link #backgroundWork()}, but gets the result of the running one in its own callbacks.
+     * <p/>
+     * The work is cancelled only when all the tasks sharing it are cancelled.
+     * Tasks with the same key must produce the same type of result, and they must be started on main thread.
+     *
+     * @param key key of the work, null to not share it
+     * @return
+     */
+    public CocoTask<T> key(final Object key) {
+        this.key = key;
+        return this;
+    }
+
+    /**
+     * Cache the result of this task by its {@link #key(Object)}, a task started while the result is cached
+     * gets it in callback right away and doesn't run.
+     *
+     * @param cache cache of the results
+     * @param ttl   time to live of the result
+     * @param unit
+     * @return
+     */
+    public CocoTask<T> cache(final TaskCache cache, final long ttl, final TimeUnit unit) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("Time to live can't be negative");
+        }
+        this.cache = cache;
+        this.cacheTtl = unit.toNanos(ttl);
+        return this;
+    }
+
+    /**
+     * An expired result in the cache is delivered to callback right away, then the task runs and
+     * calls back again only if the new result is not equal to the expired one.
+     *
+     * @return
+     */
+    public CocoTask<T> staleWhileRevalidate() {
+        this.revalidate = true;
+        return this;
+    }
+
+    /**
+     * Run {@link #backgroundWork()} again when it fails, after a growing wait, as long as the policy allows.
+     * Only the final failure reaches {@link #failcallback(Object, Exception)}, a timeout covers all the attempts.
+     *
+     * @param policy retry policy, null to not retry
+     * @return
+     */
+    public CocoTask<T> retry(final RetryPolicy policy) {
+        this.retryPolicy = policy;
+        return this;
+    }
+
+    /**
+     * Abort this task if it doesn't finish in time, counted from the start and including the wait in the queue.
+     * The thread running {@link #backgroundWork()} is interrupted and {@link #failcallback(Object, Exception)}
+     * gets a {@link TaskTimeoutException}.
+     * <p/>
+     * Tasks sharing the work of a running task by {@link #key(Object)} share its time limit.
+     *
+     * @param timeout
+     * @param unit
+     * @return
+     */
+    public CocoTask<T> timeout(final long timeout, final TimeUnit unit) {
+        if (timeout <= 0) {
+            throw new IllegalArgumentException("Timeout must be positive");
+        }
+        this.timeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Abort this task if it isn't finished at the time, like {@link #timeout(long, TimeUnit)}.
+     * If both are set the earlier one applies.
+     *
+     * @param timeMillis wall clock time in milliseconds, as {@link System#currentTimeMillis()}
+     * @return
+     */
+    public CocoTask<T> deadline(final long timeMillis) {
+        if (timeMillis <= 0) {
+            throw new IllegalArgumentException("Deadline must be positive");
+        }
+        this.deadlineMillis = timeMillis;
+        return this;
+    }
+
+    void fallbackExecutor(final Executor executor) {
+        if (this.executor == null) {
+            this.executor = executor;
+        }
+    }
+
     /**
      * Cancel the task
      */
     public void cancel() {
+        unregister();
+        if (leader != null || shares > 0) {
+            // shared by key, the work is cancelled when all its tasks are cancelled
+            if (!detached) {
+                detached = true;
+                (leader != null ? leader : this).release();
+            }
+            return;
+        }
+        cancelWork();
+    }
+
+    private void cancelWork() {
+        disarmTimer();
+        progressChannel.close();
+        if (retryWait != null) {
+            retryWait.cancel();
+            retryWait = null;
+        }
         if (task != null && !task.isCancelled()
                 && task.getStatus() != AsyncTask.Status.FINISHED) {
             task.cancel(true);
@@ -367,13 +1168,50 @@ public abstract class CocoTask<T> implements OnCancelListener {
     }
 
     /**
-     * Execute an {@link AsyncTask} on a thread pool.
+     * Execute an {@link AsyncTask} on the executor of this task,
+     * a rejection of the executor is delivered to {@link #failcallback(Object, Exception)}.
      *
      * @param task Task to execute.
-     * @param <T>  Task argument type.
+     * @param <E>  Task argument type.
+     */
+    private <E> void execute(AsyncTask<E, ?, ?> task) {
+        try {
+            task.executeOnExecutor(target(null));
+        } catch (RejectedExecutionException e) {
+            task.abort(e, false);
+        }
+    }
+
+    /**
+     * @param fallback executor used if this task doesn't choose one, null for the default executor
+     * @return executor running the work of this task
      */
-    private static <T> void execute(AsyncTask<T, ?, ?> task) {
-        task.executeOnExecutor(AsyncTask.THREAD_POOL_EXECUTOR);
+    Executor target(final Executor fallback) {
+        Executor exec = executor != null ? executor : fallback != null ? fallback : defaultExecutor;
+        if (serialKey != null) {
+            exec = KeyedSerialExecutor.on(serialKey, exec);
+        }
+        return exec;
+    }
+
+    Executor getExecutor() {
+        return executor;
+    }
+
+    /**
+     * @return true if the running work is cancelled, safe on worker thread
+     */
+    boolean isWorkCancelled() {
+        final AsyncTask<?, ?, ?> work = task;
+        return work != null && work.isCancelled();
+    }
+
+    boolean isSerial() {
+        return serialKey != null;
+    }
+
+    Priority getPriority() {
+        return priority;
     }
 
     public boolean isRunning() {
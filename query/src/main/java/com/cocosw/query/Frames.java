@@ -0,0 +1,58 @@
+package com.cocosw.query;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.view.Choreographer;
+
+/**
+ * Run work on main thread at the next frame, by Choreographer on Jelly Bean and above,
+ * or by a plain main thread post on older devices.
+ */
+final class Frames {
+
+    private static final Handler HANDLER = new Handler(Looper.getMainLooper());
+
+    private Frames() {
+    }
+
+    static boolean isMainThread() {
+        return Looper.myLooper() == Looper.getMainLooper();
+    }
+
+    static void post(final Runnable runnable) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.JELLY_BEAN) {
+            HANDLER.post(runnable);
+        } else if (isMainThread()) {
+            JellyBean.postFrame(runnable);
+        } else {
+            HANDLER.post(new Runnable() {
+                @Override
+                public void run() {
+                    JellyBean.postFrame(runnable);
+                }
+            });
+        }
+    }
+
+    static void postMain(Runnable runnable) {
+        HANDLER.post(runnable);
+    }
+
+    static void postMainDelayed(Runnable runnable, long delayMillis) {
+        HANDLER.postDelayed(runnable, delayMillis);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class JellyBean {
+        static void postFrame(final Runnable runnable) {
+            Choreographer.getInstance().postFrameCallback(new Choreographer.FrameCallback() {
+                @Override
+                public void doFrame(long frameTimeNanos) {
+                    runnable.run();
+                }
+            });
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.cocosw.query;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the runnables submitted with the same key one at a time in submission order,
+ * runnables of different keys run in parallel on their executors.
+ * <p/>
+ * Submission is lock free: a key has a queue and a counter of pending runnables, a runnable is queued
+ * before it's counted, the submitter which moves the counter from zero schedules the queue, and each
+ * finished runnable schedules the next one. A queue is removed when it becomes idle, a dead queue is
+ * marked by a negative counter so no runnable can be added to it after it's removed.
+ *
+ * @see CocoTask#serialOn(Object)
+ */
+final class KeyedSerialExecutor {
+
+    private static final ConcurrentHashMap<Object, SerialQueue> queues = new ConcurrentHashMap<Object, SerialQueue>();
+
+    private KeyedSerialExecutor() {
+    }
+
+    /**
+     * @param key      key of the serial order
+     * @param executor executor which runs the runnables
+     * @return executor running its runnables in order of the key
+     */
+    static Executor on(final Object key, final Executor executor) {
+        if (key == null) {
+            throw new IllegalArgumentException("Serial key can't be null");
+        }
+        return new Executor() {
+            @Override
+            public void execute(Runnable r) {
+                KeyedSerialExecutor.execute(key, executor, r);
+            }
+        };
+    }
+
+    static void execute(Object key, Executor executor, Runnable r) {
+        Entry entry = new Entry(r, executor);
+        for (; ; ) {
+            SerialQueue queue = queues.get(key);
+            if (queue == null) {
+                SerialQueue created = new SerialQueue(key);
+                queue = queues.putIfAbsent(key, created);
+                if (queue == null) {
+                    queue = created;
+                }
+            }
+            if (queue.offer(entry)) {
+                return;
+            }
+            queues.remove(key, queue);
+        }
+    }
+
+    private static final class Entry {
+        final Runnable runnable;
+        final Executor executor;
+
+        Entry(Runnable runnable, Executor executor) {
+            this.runnable = runnable;
+            this.executor = executor;
+        }
+    }
+
+    private static final class SerialQueue implements Runnable, PriorityTaskQueue.Prioritized {
+        private final Object key;
+        private final ConcurrentLinkedQueue<Entry> tasks = new ConcurrentLinkedQueue<Entry>();
+        private final AtomicInteger count = new AtomicInteger();
+
+        SerialQueue(Object key) {
+            this.key = key;
+        }
+
+        /**
+         * The entry is queued before it's counted, so a counted entry is always in the queue
+         * and the queue is never polled empty
+         */
+        boolean offer(Entry entry) {
+            tasks.offer(entry);
+            for (; ; ) {
+                int c = count.get();
+                if (c < 0) {
+                    // retired while queueing, nobody polls a dead queue
+                    tasks.remove(entry);
+                    return false;
+                }
+                if (count.compareAndSet(c, c + 1)) {
+                    if (c == 0) {
+                        scheduleNext();
+                    }
+                    return true;
+                }
+            }
+        }
+
+        /**
+         * Hand the head to its executor, entries rejected by their executor are dropped in a loop
+         */
+        private void scheduleNext() {
+            for (; ; ) {
+                Entry entry = tasks.peek();
+                try {
+                    entry.executor.execute(this);
+                    return;
+                } catch (RejectedExecutionException e) {
+                    TaskExecutor.reject(tasks.poll().runnable, e);
+                    if (!release()) {
+                        return;
+                    }
+                }
+            }
+        }
+
+        /**
+         * The head is done, retire the queue if it's idle
+         *
+         * @return true if another entry is counted and must be scheduled
+         */
+        private boolean release() {
+            if (count.decrementAndGet() > 0) {
+                return true;
+            }
+            // an entry queued but not counted yet is scheduled by its submitter
+            if (tasks.isEmpty() && count.compareAndSet(0, -1)) {
+                queues.remove(key, this);
+            }
+            return false;
+        }
+
+        @Override
+        public void run() {
+            Entry entry = tasks.poll();
+            try {
+                entry.runnable.run();
+            } finally {
+                if (release()) {
+                    scheduleNext();
+                }
+            }
+        }
+
+        @Override
+        public CocoTask.Priority priority() {
+            Entry entry = tasks.peek();
+            return entry == null ? CocoTask.Priority.NORMAL : PriorityTaskQueue.priorityOf(entry.runnable);
+        }
+
+        /**
+         * Dropped from the queue of an executor, called by its rejection handler after the task which
+         * pushed this one out has taken the freed slot, so the next entry goes through the saturation policy
+         */
+        @Override
+        public void reject(RejectedExecutionException e) {
+            TaskExecutor.reject(tasks.poll().runnable, e);
+            if (release()) {
+                scheduleNext();
+            }
+        }
+    }
+}
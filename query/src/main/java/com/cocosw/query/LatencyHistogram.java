@@ -0,0 +1,93 @@
+package com.cocosw.query;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of durations with power of two buckets of microseconds,
+ * recording is a few atomic increments and never allocates.
+ * <p/>
+ * Percentiles are reported as the upper bound of their bucket, so they are at most twice the real value.
+ */
+public final class LatencyHistogram {
+
+    private static final int BUCKETS = 40;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong total = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        final long micros = nanos / 1000;
+        final int bucket = Math.min(BUCKETS - 1, 64 - Long.numberOfLeadingZeros(micros));
+        buckets.incrementAndGet(bucket);
+        count.incrementAndGet();
+        total.addAndGet(nanos);
+        long m;
+        while (nanos > (m = max.get()) && !max.compareAndSet(m, nanos)) {
+            // retry
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMean(TimeUnit unit) {
+        final long c = count.get();
+        return c == 0 ? 0 : unit.convert(total.get() / c, TimeUnit.NANOSECONDS);
+    }
+
+    public long getMax(TimeUnit unit) {
+        return unit.convert(max.get(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @param percentile from 0 to 100, e.g. 99
+     * @param unit
+     * @return duration which the percentile of the records didn't exceed
+     */
+    public long getPercentile(double percentile, TimeUnit unit) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("Percentile must be between 0 and 100");
+        }
+        long c = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            c += buckets.get(i);
+        }
+        if (c == 0) {
+            return 0;
+        }
+        final long rank = (long) Math.ceil(c * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank && seen > 0) {
+                // bucket i holds micros below 2^i
+                return Math.min(unit.convert(1L << i, TimeUnit.MICROSECONDS), getMax(unit));
+            }
+        }
+        return getMax(unit);
+    }
+
+    void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    @Override
+    public String toString() {
+        return "count=" + getCount() + ", mean=" + getMean(TimeUnit.MILLISECONDS) + "ms, p50="
+                + getPercentile(50, TimeUnit.MILLISECONDS) + "ms, p99=" + getPercentile(99, TimeUnit.MILLISECONDS)
+                + "ms, max=" + getMax(TimeUnit.MILLISECONDS) + "ms";
+    }
+}
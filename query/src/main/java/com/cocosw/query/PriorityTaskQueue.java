@@ -0,0 +1,454 @@
+package com.cocosw.query;
+
+import java.util.AbstractQueue;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Work queue of {@link TaskExecutor} with one FIFO lane per {@link CocoTask.Priority}.
+ * <p/>
+ * Higher lanes are taken first, so queued low priority work is passed by new urgent work.
+ * A lane head which has waited longer than the starvation limit is taken before the higher lanes,
+ * so PREFETCH work still makes progress under constant load.
+ * <p/>
+ * For an elastic pool the queue refuses work while no idle thread can take it and the pool can grow,
+ * so the pool starts a thread instead of queueing, see {@link TaskExecutor#elastic(String, int, int, long, TimeUnit)}.
+ */
+final class PriorityTaskQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+    /**
+     * Runnable which knows its priority, other runnables are queued as NORMAL.
+     */
+    interface Prioritized {
+        CocoTask.Priority priority();
+
+        /**
+         * Called when the runnable is dropped from the queue and will never run.
+         */
+        void reject(RejectedExecutionException e);
+    }
+
+    private static final CocoTask.Priority[] PRIORITIES = CocoTask.Priority.values();
+
+    private final int capacity;
+    private final long starvationNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final ArrayDeque<Entry>[] lanes;
+    private int count;
+    private int waiting;
+    private volatile ThreadPoolExecutor elastic;
+
+    private final long[] waitCount = new long[PRIORITIES.length];
+    private final long[] waitTotal = new long[PRIORITIES.length];
+    private final long[] waitMax = new long[PRIORITIES.length];
+
+    PriorityTaskQueue(int capacity, long starvation, TimeUnit unit) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive");
+        }
+        this.capacity = capacity;
+        this.starvationNanos = unit.toNanos(starvation);
+        lanes = newLanes(PRIORITIES.length);
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = new ArrayDeque<Entry>();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArrayDeque<Entry>[] newLanes(int count) {
+        return (ArrayDeque<Entry>[]) new ArrayDeque<?>[count];
+    }
+
+    /**
+     * @param pool pool which grows instead of queueing, up to its maximum size
+     */
+    void setElastic(ThreadPoolExecutor pool) {
+        elastic = pool;
+    }
+
+    boolean isElastic() {
+        return elastic != null;
+    }
+
+    static CocoTask.Priority priorityOf(Object r) {
+        if (r instanceof Prioritized) {
+            CocoTask.Priority priority = ((Prioritized) r).priority();
+            if (priority != null) {
+                return priority;
+            }
+        }
+        return CocoTask.Priority.NORMAL;
+    }
+
+    // ---- stats, wait is the time from queueing to being taken by a thread, not the run time ----
+
+    long getWaitCount(CocoTask.Priority priority) {
+        lock.lock();
+        try {
+            return waitCount[priority.ordinal()];
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getAverageWait(CocoTask.Priority priority, TimeUnit unit) {
+        lock.lock();
+        try {
+            int i = priority.ordinal();
+            return waitCount[i] == 0 ? 0 : unit.convert(waitTotal[i] / waitCount[i], TimeUnit.NANOSECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    long getMaxWait(CocoTask.Priority priority, TimeUnit unit) {
+        lock.lock();
+        try {
+            return unit.convert(waitMax[priority.ordinal()], TimeUnit.NANOSECONDS);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    int size(CocoTask.Priority priority) {
+        lock.lock();
+        try {
+            return lanes[priority.ordinal()].size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // ---- queue ----
+
+    private void enqueue(Runnable r) {
+        lanes[priorityOf(r).ordinal()].addLast(new Entry(r, System.nanoTime()));
+        count++;
+        notEmpty.signal();
+    }
+
+    private Runnable dequeue() {
+        long now = System.nanoTime();
+        int lane = -1;
+        Entry starved = null;
+        for (int i = 0; i < lanes.length; i++) {
+            Entry head = lanes[i].peekFirst();
+            if (head == null) {
+                continue;
+            }
+            if (lane == -1) {
+                lane = i;
+            } else if (now - head.enqueued > starvationNanos
+                    && (starved == null || head.enqueued < starved.enqueued)) {
+                starved = head;
+                lane = i;
+            }
+        }
+        Entry entry = lanes[lane].pollFirst();
+        count--;
+        long wait = now - entry.enqueued;
+        waitCount[lane]++;
+        waitTotal[lane] += wait;
+        if (wait > waitMax[lane]) {
+            waitMax[lane] = wait;
+        }
+        notFull.signal();
+        return entry.runnable;
+    }
+
+    @Override
+    public boolean offer(Runnable r) {
+        if (r == null) {
+            throw new NullPointerException();
+        }
+        // read before locking, the pool takes its own lock and calls the queue under it
+        final ThreadPoolExecutor pool = elastic;
+        final boolean canGrow = pool != null && pool.getPoolSize() < pool.getMaximumPoolSize();
+        lock.lock();
+        try {
+            if (count >= capacity) {
+                return false;
+            }
+            if (canGrow && count >= waiting) {
+                // no idle thread for it, let the pool start one
+                return false;
+            }
+            enqueue(r);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Queue the runnable if there is room, even if an elastic pool could grow
+     */
+    boolean force(Runnable r) {
+        if (r == null) {
+            throw new NullPointerException();
+        }
+        lock.lock();
+        try {
+            if (count >= capacity) {
+                return false;
+            }
+            enqueue(r);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public void put(Runnable r) throws InterruptedException {
+        if (r == null) {
+            throw new NullPointerException();
+        }
+        lock.lockInterruptibly();
+        try {
+            while (count >= capacity) {
+                notFull.await();
+            }
+            enqueue(r);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean offer(Runnable r, long timeout, TimeUnit unit) throws InterruptedException {
+        if (r == null) {
+            throw new NullPointerException();
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (count >= capacity) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(r);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll() {
+        lock.lock();
+        try {
+            return count == 0 ? null : dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * @return the oldest runnable of the priority, or null
+     */
+    Runnable poll(CocoTask.Priority priority) {
+        lock.lock();
+        try {
+            Entry entry = lanes[priority.ordinal()].pollFirst();
+            if (entry == null) {
+                return null;
+            }
+            count--;
+            notFull.signal();
+            return entry.runnable;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            waiting++;
+            try {
+                while (count == 0) {
+                    notEmpty.await();
+                }
+            } finally {
+                waiting--;
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            waiting++;
+            try {
+                while (count == 0) {
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+            } finally {
+                waiting--;
+            }
+            return dequeue();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public Runnable peek() {
+        lock.lock();
+        try {
+            for (ArrayDeque<Entry> lane : lanes) {
+                Entry head = lane.peekFirst();
+                if (head != null) {
+                    return head.runnable;
+                }
+            }
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            for (ArrayDeque<Entry> lane : lanes) {
+                for (Iterator<Entry> it = lane.iterator(); it.hasNext(); ) {
+                    if (it.next().runnable.equals(o)) {
+                        it.remove();
+                        count--;
+                        notFull.signal();
+                        return true;
+                    }
+                }
+            }
+            return false;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return capacity - count;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    @Override
+    public int drainTo(Collection<? super Runnable> c, int maxElements) {
+        if (c == this) {
+            throw new IllegalArgumentException();
+        }
+        lock.lock();
+        try {
+            int n = 0;
+            while (n < maxElements && count > 0) {
+                c.add(dequeue());
+                n++;
+            }
+            return n;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Iterator over a snapshot in lane order, {@link Iterator#remove()} removes from the queue.
+     */
+    @Override
+    public Iterator<Runnable> iterator() {
+        final ArrayList<Runnable> snapshot = new ArrayList<Runnable>();
+        lock.lock();
+        try {
+            for (ArrayDeque<Entry> lane : lanes) {
+                for (Entry entry : lane) {
+                    snapshot.add(entry.runnable);
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+        return new Iterator<Runnable>() {
+            private int next;
+            private Runnable last;
+
+            @Override
+            public boolean hasNext() {
+                return next < snapshot.size();
+            }
+
+            @Override
+            public Runnable next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                last = snapshot.get(next++);
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                PriorityTaskQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    private static final class Entry {
+        final Runnable runnable;
+        final long enqueued;
+
+        Entry(Runnable runnable, long enqueued) {
+            this.runnable = runnable;
+            this.enqueued = enqueued;
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package com.cocosw.query;
+
+import android.os.SystemClock;
+
+/**
+ * Carries the progress of a task from its worker thread to main thread, coalesced so that
+ * at most one update per frame, or per interval, reaches main thread and the latest value wins.
+ * <p/>
+ * Publishing only stores the values, it posts to main thread when no delivery is pending already.
+ */
+final class ProgressChannel implements Runnable {
+
+    private final CocoTask<?> task;
+    private final TaskProgress latest = new TaskProgress();
+    private final TaskProgress snapshot = new TaskProgress();
+    private boolean dirty;
+    private boolean scheduled;
+    private volatile long intervalMillis;
+    private volatile long lastDelivery;
+    private volatile boolean open;
+
+    ProgressChannel(CocoTask<?> task) {
+        this.task = task;
+    }
+
+    /**
+     * @param millis least time between two deliveries, 0 for once per frame
+     */
+    void setInterval(long millis) {
+        intervalMillis = millis;
+    }
+
+    void open() {
+        open = true;
+    }
+
+    /**
+     * Drop pending and later updates, the task is done
+     */
+    void close() {
+        open = false;
+        synchronized (this) {
+            dirty = false;
+            latest.set(0, -1, -1, null);
+        }
+    }
+
+    void publish(double fraction, long current, long total, Object payload) {
+        if (!open) {
+            return;
+        }
+        final boolean schedule;
+        synchronized (this) {
+            latest.set(fraction, current, total, payload);
+            dirty = true;
+            schedule = !scheduled;
+            scheduled = true;
+        }
+        if (schedule) {
+            final long interval = intervalMillis;
+            if (interval <= 0) {
+                Frames.post(this);
+            } else {
+                final long wait = lastDelivery + interval - SystemClock.uptimeMillis();
+                Frames.postMainDelayed(this, Math.max(0, wait));
+            }
+        }
+    }
+
+    @Override
+    public void run() {
+        synchronized (this) {
+            scheduled = false;
+            if (!dirty) {
+                return;
+            }
+            dirty = false;
+            snapshot.set(latest);
+        }
+        lastDelivery = SystemClock.uptimeMillis();
+        if (open) {
+            task.deliverProgress(snapshot);
+        }
+    }
+}
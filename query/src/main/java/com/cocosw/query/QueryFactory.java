@@ -0,0 +1,61 @@
+package com.cocosw.query;
+
+import android.view.View;
+
+import java.lang.reflect.Constructor;
+
+/**
+ * Creates the ViewQuery instance which is handed out by {@link CocoQuery#id(int)} and {@link CocoQuery#v(View)}.
+ * <p/>
+ * Register your own factory by {@link CocoQuery#setQueryFactory(QueryFactory)} to avoid reflection on the hot path.
+ *
+ * @param <T> ViewQuery type
+ */
+public interface QueryFactory<T extends AbstractViewQuery<T>> {
+
+    /**
+     * Built-in factory for {@link AbstractViewQuery.DefaultQuery}
+     */
+    QueryFactory<AbstractViewQuery.DefaultQuery> DEFAULT = new QueryFactory<AbstractViewQuery.DefaultQuery>() {
+        @Override
+        public AbstractViewQuery.DefaultQuery create(View view) {
+            return new AbstractViewQuery.DefaultQuery(view);
+        }
+    };
+
+    /**
+     * Create a new ViewQuery for given view
+     *
+     * @param view selected view, may be null
+     * @return new ViewQuery
+     */
+    T create(View view);
+
+    /**
+     * Fallback factory for classes which registered by {@link CocoQuery#setQueryClass(Class)},
+     * constructor is looked up only once.
+     *
+     * @param <T>
+     */
+    final class ReflectiveFactory<T extends AbstractViewQuery<T>> implements QueryFactory<T> {
+
+        private final Constructor<T> constructor;
+
+        public ReflectiveFactory(Class<T> clz) {
+            try {
+                constructor = clz.getConstructor(View.class);
+            } catch (NoSuchMethodException e) {
+                throw new IllegalArgumentException(clz.getName() + " must have a public constructor with View parameter", e);
+            }
+        }
+
+        @Override
+        public T create(View view) {
+            try {
+                return constructor.newInstance(view);
+            } catch (Exception e) {
+                throw new IllegalStateException("Can't create " + constructor.getDeclaringClass().getName(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,690 @@
+package com.cocosw.query;
+
+import android.content.Intent;
+import android.graphics.Bitmap;
+import android.graphics.Typeface;
+import android.graphics.drawable.Drawable;
+import android.text.Spanned;
+import android.view.GestureDetector;
+import android.view.View;
+import android.view.animation.Animation;
+import android.widget.AbsListView;
+import android.widget.Adapter;
+import android.widget.AdapterView;
+import android.widget.TextView;
+
+/**
+ * A group of selected views, each method is applied to every view in the group.
+ * <p/>
+ * Every setter of {@link AbstractViewQuery} is here except {@link AbstractViewQuery#animate(Animation)},
+ * an animation instance can't run on several views, use {@link #animate(int)} or {@link #each(Each)}.
+ *
+ * @param <T> ViewQuery type
+ */
+public class QueryGroup<T extends AbstractViewQuery<T>> {
+
+    /**
+     * Callback for every view in the group
+     *
+     * @param <T>
+     */
+    public interface Each<T> {
+        /**
+         * @param query query of the view, only valid in this callback
+         */
+        void run(T query);
+    }
+
+    private final T query;
+    private final View[] views;
+
+    QueryGroup(T query, View[] views) {
+        this.query = query;
+        this.views = views;
+    }
+
+    private T at(View view) {
+        query.view = view;
+        return query;
+    }
+
+    /**
+     * @return how many views are selected
+     */
+    public int size() {
+        return views.length;
+    }
+
+    /**
+     * Return the selected view at index
+     *
+     * @param index
+     * @param <E>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <E extends View> E getView(int index) {
+        return (E) views[index];
+    }
+
+    /**
+     * Run the callback with every view in the group
+     *
+     * @param each
+     * @return self
+     */
+    public QueryGroup<T> each(Each<T> each) {
+        for (View view : views) {
+            each.run(at(view));
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#text(int)
+     */
+    public QueryGroup<T> text(int resid) {
+        for (View view : views) {
+            at(view).text(resid);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#text(int, Object...)
+     */
+    public QueryGroup<T> text(int resid, Object... formatArgs) {
+        for (View view : views) {
+            at(view).text(resid, formatArgs);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#text(Intent, String)
+     */
+    public QueryGroup<T> text(Intent intent, String extraName) {
+        for (View view : views) {
+            at(view).text(intent, extraName);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#text(CharSequence)
+     */
+    public QueryGroup<T> text(CharSequence text) {
+        for (View view : views) {
+            at(view).text(text);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#text(CharSequence, boolean)
+     */
+    public QueryGroup<T> text(CharSequence text, boolean goneIfEmpty) {
+        for (View view : views) {
+            at(view).text(text, goneIfEmpty);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#imeAction(int, View)
+     */
+    public QueryGroup<T> imeAction(int lable, View associateView) {
+        for (View view : views) {
+            at(view).imeAction(lable, associateView);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#imeAction(TextView.OnEditorActionListener)
+     */
+    public QueryGroup<T> imeAction(TextView.OnEditorActionListener listener) {
+        for (View view : views) {
+            at(view).imeAction(listener);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#text(Spanned)
+     */
+    public QueryGroup<T> text(Spanned text) {
+        for (View view : views) {
+            at(view).text(text);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#textColor(int)
+     */
+    public QueryGroup<T> textColor(int color) {
+        for (View view : views) {
+            at(view).textColor(color);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#textColorId(int)
+     */
+    public QueryGroup<T> textColorId(int id) {
+        for (View view : views) {
+            at(view).textColorId(id);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#typeface(Typeface)
+     */
+    public QueryGroup<T> typeface(Typeface tf) {
+        for (View view : views) {
+            at(view).typeface(tf);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#textSize(float)
+     */
+    public QueryGroup<T> textSize(float size) {
+        for (View view : views) {
+            at(view).textSize(size);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#adapter(Adapter)
+     */
+    public QueryGroup<T> adapter(Adapter adapter) {
+        for (View view : views) {
+            at(view).adapter(adapter);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#image(int)
+     */
+    public QueryGroup<T> image(int resid) {
+        for (View view : views) {
+            at(view).image(resid);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#image(Drawable)
+     */
+    public QueryGroup<T> image(Drawable drawable) {
+        for (View view : views) {
+            at(view).image(drawable);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#image(Bitmap)
+     */
+    public QueryGroup<T> image(Bitmap bm) {
+        for (View view : views) {
+            at(view).image(bm);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#tag(Object)
+     */
+    public QueryGroup<T> tag(Object tag) {
+        for (View view : views) {
+            at(view).tag(tag);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#tag(int, Object)
+     */
+    public QueryGroup<T> tag(int key, Object tag) {
+        for (View view : views) {
+            at(view).tag(key, tag);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#enabled(boolean)
+     */
+    public QueryGroup<T> enabled(boolean enabled) {
+        for (View view : views) {
+            at(view).enabled(enabled);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#checked(boolean)
+     */
+    public QueryGroup<T> checked(boolean checked) {
+        for (View view : views) {
+            at(view).checked(checked);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#clickable(boolean)
+     */
+    public QueryGroup<T> clickable(boolean clickable) {
+        for (View view : views) {
+            at(view).clickable(clickable);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#gone()
+     */
+    public QueryGroup<T> gone() {
+        return visibility(View.GONE);
+    }
+
+    /**
+     * @see AbstractViewQuery#gone(boolean)
+     */
+    public QueryGroup<T> gone(boolean b) {
+        return visibility(b ? View.GONE : View.VISIBLE);
+    }
+
+    /**
+     * @see AbstractViewQuery#invisible()
+     */
+    public QueryGroup<T> invisible() {
+        return visibility(View.INVISIBLE);
+    }
+
+    /**
+     * @see AbstractViewQuery#visible()
+     */
+    public QueryGroup<T> visible() {
+        return visibility(View.VISIBLE);
+    }
+
+    /**
+     * @see AbstractViewQuery#visibility(int)
+     */
+    public QueryGroup<T> visibility(int visibility) {
+        for (View view : views) {
+            at(view).visibility(visibility);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#background(int)
+     */
+    public QueryGroup<T> background(int id) {
+        for (View view : views) {
+            at(view).background(id);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#backgroundColor(int)
+     */
+    public QueryGroup<T> backgroundColor(int color) {
+        for (View view : views) {
+            at(view).backgroundColor(color);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#backgroundColorId(int)
+     */
+    public QueryGroup<T> backgroundColorId(int colorId) {
+        for (View view : views) {
+            at(view).backgroundColorId(colorId);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#dataChanged()
+     */
+    public QueryGroup<T> dataChanged() {
+        for (View view : views) {
+            at(view).dataChanged();
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#clicked(View.OnClickListener)
+     */
+    public QueryGroup<T> clicked(View.OnClickListener listener) {
+        for (View view : views) {
+            at(view).clicked(listener);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#longClicked(View.OnLongClickListener)
+     */
+    public QueryGroup<T> longClicked(View.OnLongClickListener listener) {
+        for (View view : views) {
+            at(view).longClicked(listener);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#itemClicked(AdapterView.OnItemClickListener)
+     */
+    public QueryGroup<T> itemClicked(AdapterView.OnItemClickListener listener) {
+        for (View view : views) {
+            at(view).itemClicked(listener);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#itemLongClicked(AdapterView.OnItemLongClickListener)
+     */
+    public QueryGroup<T> itemLongClicked(AdapterView.OnItemLongClickListener listener) {
+        for (View view : views) {
+            at(view).itemLongClicked(listener);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#itemSelected(AdapterView.OnItemSelectedListener)
+     */
+    public QueryGroup<T> itemSelected(AdapterView.OnItemSelectedListener listener) {
+        for (View view : views) {
+            at(view).itemSelected(listener);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#setSelection(int)
+     */
+    public QueryGroup<T> setSelection(int position) {
+        for (View view : views) {
+            at(view).setSelection(position);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#clear()
+     */
+    public QueryGroup<T> clear() {
+        for (View view : views) {
+            at(view).clear();
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#margin(float, float, float, float)
+     */
+    public QueryGroup<T> margin(float leftDip, float topDip, float rightDip, float bottomDip) {
+        for (View view : views) {
+            at(view).margin(leftDip, topDip, rightDip, bottomDip);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#width(int)
+     */
+    public QueryGroup<T> width(int dip) {
+        for (View view : views) {
+            at(view).width(dip);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#height(int)
+     */
+    public QueryGroup<T> height(int dip) {
+        for (View view : views) {
+            at(view).height(dip);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#width(int, boolean)
+     */
+    public QueryGroup<T> width(int width, boolean dip) {
+        for (View view : views) {
+            at(view).width(width, dip);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#height(int, boolean)
+     */
+    public QueryGroup<T> height(int height, boolean dip) {
+        for (View view : views) {
+            at(view).height(height, dip);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#animate(int)
+     */
+    public QueryGroup<T> animate(int animId) {
+        for (View view : views) {
+            at(view).animate(animId);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#animate(int, Animation.AnimationListener)
+     */
+    public QueryGroup<T> animate(int animId, Animation.AnimationListener listener) {
+        for (View view : views) {
+            at(view).animate(animId, listener);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#click()
+     */
+    public QueryGroup<T> click() {
+        for (View view : views) {
+            at(view).click();
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#longClick()
+     */
+    public QueryGroup<T> longClick() {
+        for (View view : views) {
+            at(view).longClick();
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#error(CharSequence)
+     */
+    public QueryGroup<T> error(CharSequence error) {
+        for (View view : views) {
+            at(view).error(error);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#error(int)
+     */
+    public QueryGroup<T> error(int errorRes) {
+        for (View view : views) {
+            at(view).error(errorRes);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#error(CharSequence, Drawable)
+     */
+    public QueryGroup<T> error(CharSequence error, Drawable icon) {
+        for (View view : views) {
+            at(view).error(error, icon);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#html(String)
+     */
+    public QueryGroup<T> html(String text) {
+        for (View view : views) {
+            at(view).html(text);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#doubleTap(GestureDetector.OnDoubleTapListener)
+     */
+    public QueryGroup<T> doubleTap(GestureDetector.OnDoubleTapListener listener) {
+        for (View view : views) {
+            at(view).doubleTap(listener);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#increaseHitRect(int)
+     */
+    public QueryGroup<T> increaseHitRect(int amount) {
+        for (View view : views) {
+            at(view).increaseHitRect(amount);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#increaseHitRect(int, int, int, int)
+     */
+    public QueryGroup<T> increaseHitRect(int top, int left, int bottom, int right) {
+        for (View view : views) {
+            at(view).increaseHitRect(top, left, bottom, right);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#typeface(String)
+     */
+    public QueryGroup<T> typeface(String name) {
+        for (View view : views) {
+            at(view).typeface(name);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#input(AbstractViewQuery.BooleanRunnable)
+     */
+    public QueryGroup<T> input(AbstractViewQuery.BooleanRunnable runnable) {
+        for (View view : views) {
+            at(view).input(runnable);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#fadeIn()
+     */
+    public QueryGroup<T> fadeIn() {
+        for (View view : views) {
+            at(view).fadeIn();
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#fadeOut()
+     */
+    public QueryGroup<T> fadeOut() {
+        for (View view : views) {
+            at(view).fadeOut();
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#fade(boolean)
+     */
+    public QueryGroup<T> fade(boolean show) {
+        for (View view : views) {
+            at(view).fade(show);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#url(String)
+     */
+    public QueryGroup<T> url(String url) {
+        for (View view : views) {
+            at(view).url(url);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#smoothScrollTo(int)
+     */
+    public QueryGroup<T> smoothScrollTo(int position) {
+        for (View view : views) {
+            at(view).smoothScrollTo(position);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#clicked(CocoTask<?>)
+     */
+    public QueryGroup<T> clicked(CocoTask<?> task) {
+        for (View view : views) {
+            at(view).clicked(task);
+        }
+        return this;
+    }
+
+    /**
+     * @see AbstractViewQuery#scrolled(AbsListView.OnScrollListener)
+     */
+    public QueryGroup<T> scrolled(AbsListView.OnScrollListener listener) {
+        for (View view : views) {
+            at(view).scrolled(listener);
+        }
+        return this;
+    }
+}
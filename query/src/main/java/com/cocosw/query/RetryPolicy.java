@@ -0,0 +1,152 @@
+package com.cocosw.query;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * When and how long to wait before a failed {@link CocoTask} runs its {@link CocoTask#backgroundWork()} again.
+ * <p/>
+ * The wait grows exponentially from the initial backoff up to the max backoff, and is shortened by a random
+ * part of up to the jitter, so clients failing together don't retry together.
+ * No thread is held during the wait.
+ *
+ * @see CocoTask#retry(RetryPolicy)
+ */
+public class RetryPolicy {
+
+    /**
+     * Decide if a failure is worth a retry, e.g. an IOException is but a parse error is not
+     */
+    public interface Filter {
+        boolean shouldRetry(Exception e);
+    }
+
+    private static final Filter ANY = new Filter() {
+        @Override
+        public boolean shouldRetry(Exception e) {
+            return true;
+        }
+    };
+
+    private static final Random random = new Random();
+
+    private final int maxAttempts;
+    private long initialNanos = TimeUnit.MILLISECONDS.toNanos(500);
+    private long maxNanos = TimeUnit.SECONDS.toNanos(30);
+    private double multiplier = 2;
+    private double jitter = 0.5;
+    private Filter filter = ANY;
+
+    /**
+     * @param maxAttempts max count of runs, including the first one
+     */
+    public RetryPolicy(int maxAttempts) {
+        if (maxAttempts < 1) {
+            throw new IllegalArgumentException("Max attempts must be at least 1");
+        }
+        this.maxAttempts = maxAttempts;
+    }
+
+    /**
+     * @param initial wait before the first retry, 500ms by default
+     * @param max     longest wait, 30s by default
+     * @param unit
+     * @return
+     */
+    public RetryPolicy backoff(long initial, long max, TimeUnit unit) {
+        if (initial < 0 || max < initial) {
+            throw new IllegalArgumentException("Backoff must be positive and not above its max");
+        }
+        this.initialNanos = unit.toNanos(initial);
+        this.maxNanos = unit.toNanos(max);
+        return this;
+    }
+
+    /**
+     * @param multiplier growth of the wait after each retry, 2 by default
+     * @return
+     */
+    public RetryPolicy multiplier(double multiplier) {
+        if (multiplier < 1) {
+            throw new IllegalArgumentException("Multiplier can't be below 1");
+        }
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * @param jitter part of the wait which is random, from 0 to 1, 0.5 by default
+     * @return
+     */
+    public RetryPolicy jitter(double jitter) {
+        if (jitter < 0 || jitter > 1) {
+            throw new IllegalArgumentException("Jitter must be between 0 and 1");
+        }
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * @param filter failures to retry, all by default
+     * @return
+     */
+    public RetryPolicy retryIf(Filter filter) {
+        if (filter == null) {
+            throw new IllegalArgumentException("Filter can't be null");
+        }
+        this.filter = filter;
+        return this;
+    }
+
+    /**
+     * Retry only failures of the types, or caused by them
+     *
+     * @param types
+     * @return
+     */
+    public RetryPolicy retryOn(final Class<?>... types) {
+        return retryIf(new Filter() {
+            @Override
+            public boolean shouldRetry(Exception e) {
+                for (Throwable t = e; t != null; t = t.getCause()) {
+                    for (Class<?> type : types) {
+                        if (type.isInstance(t)) {
+                            return true;
+                        }
+                    }
+                }
+                return false;
+            }
+        });
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * @param attempt count of runs so far
+     * @param e       failure of the last run
+     */
+    boolean shouldRetry(int attempt, Exception e) {
+        return attempt < maxAttempts && filter.shouldRetry(e);
+    }
+
+    /**
+     * @param attempt count of runs so far, from 1
+     * @return wait before the next run
+     */
+    long delayNanos(int attempt) {
+        double delay = initialNanos * Math.pow(multiplier, attempt - 1);
+        if (delay > maxNanos) {
+            delay = maxNanos;
+        }
+        return (long) (delay * (1 - jitter * random.nextDouble()));
+    }
+
+    @Override
+    public String toString() {
+        return "RetryPolicy[attempts=" + maxAttempts + ", backoff=" + TimeUnit.NANOSECONDS.toMillis(initialNanos)
+                + "ms.." + TimeUnit.NANOSECONDS.toMillis(maxNanos) + "ms, x" + multiplier + ", jitter=" + jitter + "]";
+    }
+}
@@ -0,0 +1,195 @@
+package com.cocosw.query;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * LRU cache of task results, bounded by entry count or by weight.
+ * <p/>
+ * Each entry expires after the time to live given when it's stored,
+ * an expired entry is still returned to tasks using {@link CocoTask#staleWhileRevalidate()}.
+ *
+ * @see CocoTask#cache(TaskCache, long, TimeUnit)
+ */
+public class TaskCache {
+
+    /**
+     * Weight of a cached result, e.g. byte count of a bitmap
+     */
+    public interface Weigher {
+        int weigh(Object key, Object value);
+    }
+
+    private static final Weigher ONE = new Weigher() {
+        @Override
+        public int weigh(Object key, Object value) {
+            return 1;
+        }
+    };
+
+    private final LinkedHashMap<Object, Entry> map = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+    private final long maxWeight;
+    private final Weigher weigher;
+    private long weight;
+
+    private long hitCount;
+    private long staleHitCount;
+    private long missCount;
+    private long putCount;
+    private long evictionCount;
+
+    /**
+     * @param maxEntries max count of cached results
+     */
+    public TaskCache(int maxEntries) {
+        this(maxEntries, ONE);
+    }
+
+    /**
+     * @param maxWeight max total weight of cached results
+     * @param weigher   weight of a result
+     */
+    public TaskCache(long maxWeight, Weigher weigher) {
+        if (maxWeight <= 0) {
+            throw new IllegalArgumentException("Max weight must be positive");
+        }
+        if (weigher == null) {
+            throw new IllegalArgumentException("Weigher can't be null");
+        }
+        this.maxWeight = maxWeight;
+        this.weigher = weigher;
+    }
+
+    /**
+     * @param key
+     * @param <V>
+     * @return result which is not expired, or null
+     */
+    @SuppressWarnings("unchecked")
+    public synchronized <V> V get(Object key) {
+        Entry entry = map.get(key);
+        if (entry == null || entry.isExpired(System.nanoTime())) {
+            return null;
+        }
+        return (V) entry.value;
+    }
+
+    /**
+     * @param key
+     * @param value
+     * @param ttl   time to live
+     * @param unit
+     */
+    public synchronized void put(Object key, Object value, long ttl, TimeUnit unit) {
+        if (ttl < 0) {
+            throw new IllegalArgumentException("Time to live can't be negative");
+        }
+        Entry entry = new Entry(value, weigher.weigh(key, value), System.nanoTime() + unit.toNanos(ttl));
+        Entry old = map.put(key, entry);
+        if (old != null) {
+            weight -= old.weight;
+        }
+        weight += entry.weight;
+        putCount++;
+        trim();
+    }
+
+    public synchronized void invalidate(Object key) {
+        Entry old = map.remove(key);
+        if (old != null) {
+            weight -= old.weight;
+        }
+    }
+
+    public synchronized void clear() {
+        map.clear();
+        weight = 0;
+    }
+
+    /**
+     * Lookup for a starting task, counted in the stats
+     *
+     * @return entry even if it's expired, or null
+     */
+    synchronized Entry lookup(Object key, boolean acceptStale, long now) {
+        Entry entry = map.get(key);
+        if (entry == null) {
+            missCount++;
+        } else if (!entry.isExpired(now)) {
+            hitCount++;
+        } else if (acceptStale) {
+            staleHitCount++;
+        } else {
+            missCount++;
+            entry = null;
+        }
+        return entry;
+    }
+
+    private void trim() {
+        Iterator<Map.Entry<Object, Entry>> it = map.entrySet().iterator();
+        while (weight > maxWeight && it.hasNext()) {
+            weight -= it.next().getValue().weight;
+            it.remove();
+            evictionCount++;
+        }
+    }
+
+    public synchronized int size() {
+        return map.size();
+    }
+
+    public synchronized long weight() {
+        return weight;
+    }
+
+    /**
+     * @return lookups which found a result not expired
+     */
+    public synchronized long getHitCount() {
+        return hitCount;
+    }
+
+    /**
+     * @return lookups which found an expired result and refreshed it
+     */
+    public synchronized long getStaleHitCount() {
+        return staleHitCount;
+    }
+
+    public synchronized long getMissCount() {
+        return missCount;
+    }
+
+    public synchronized long getPutCount() {
+        return putCount;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictionCount;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "TaskCache[size=" + map.size() + ", weight=" + weight + "/" + maxWeight + ", hits=" + hitCount
+                + ", staleHits=" + staleHitCount + ", misses=" + missCount + ", evictions=" + evictionCount + "]";
+    }
+
+    static final class Entry {
+        final Object value;
+        final int weight;
+        final long expires;
+
+        Entry(Object value, int weight, long expires) {
+            this.value = value;
+            this.weight = weight;
+            this.expires = expires;
+        }
+
+        boolean isExpired(long now) {
+            return now - expires >= 0;
+        }
+    }
+}
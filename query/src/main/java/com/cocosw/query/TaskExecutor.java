@@ -0,0 +1,351 @@
+package com.cocosw.query;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Thread pool with a name and queue metrics, used to run {@link CocoTask}.
+ * <p/>
+ * {@link #CPU} is for short computing work, {@link #IO} for work blocking on disk or network,
+ * and {@link #SERIAL} runs tasks one at a time in submission order.
+ * {@link #IO} is elastic: it starts a thread for each task which finds no idle one, up to a hard cap,
+ * and stops threads idle for a while, see {@link #elastic(String, int, int, long, TimeUnit)}.
+ * Use {@link CocoTask#serialOn(Object)} to run only related tasks in order.
+ * <p/>
+ * CPU and IO queue tasks by {@link CocoTask.Priority}, queue wait of each priority is reported
+ * by {@link #getAverageWait(CocoTask.Priority, TimeUnit)} and {@link #getMaxWait(CocoTask.Priority, TimeUnit)}.
+ * Only the wait for a thread is measured, run time of tasks is reported by {@link TaskMetrics}.
+ * <p/>
+ * What happens to a task when all threads are busy and the queue is full is set by
+ * {@link #setSaturationPolicy(Saturation)}.
+ *
+ * @see CocoTask#executor(java.util.concurrent.Executor)
+ * @see CocoQuery#executor(java.util.concurrent.Executor)
+ * @see CocoTask#setDefaultExecutor(java.util.concurrent.Executor)
+ */
+public class TaskExecutor extends ThreadPoolExecutor {
+
+    /**
+     * Policy for tasks submitted when the executor is saturated
+     */
+    public enum Saturation {
+        /**
+         * Reject the task, a CocoTask gets the {@link RejectedExecutionException} in its failcallback
+         */
+        REJECT,
+        /**
+         * Keep the task in an unbounded spill queue, it's moved to the work queue when a thread is free.
+         * While the spill queue isn't empty new tasks go behind it, so spilled tasks are not overtaken.
+         */
+        SPILL,
+        /**
+         * Drop the oldest queued {@link CocoTask.Priority#PREFETCH} task to make room for a task of
+         * higher priority, reject the task if it's a prefetch too or if there is none
+         */
+        DROP_OLDEST_PREFETCH
+    }
+
+    private static final int CPU_COUNT = Runtime.getRuntime().availableProcessors();
+    private static final int KEEP_ALIVE = 1;
+    private static final int IO_POOL_SIZE = 4;
+    private static final int IO_MAX_POOL_SIZE = 64;
+    private static final int IO_KEEP_ALIVE = 10;
+    private static final int STARVATION_MILLIS = 1000;
+
+    /**
+     * Pool sized by the number of cores, it's the default executor of CocoTask.
+     */
+    public static final TaskExecutor CPU = new TaskExecutor("cpu", CPU_COUNT + 1, CPU_COUNT * 2 + 1,
+            KEEP_ALIVE, TimeUnit.SECONDS, queue(128));
+
+    /**
+     * Elastic pool for blocking I/O, so slow network calls don't hold the threads of {@link #CPU}
+     * and don't wait behind each other while the cores are idle.
+     */
+    public static final TaskExecutor IO = elastic("io", IO_POOL_SIZE, IO_MAX_POOL_SIZE,
+            IO_KEEP_ALIVE, TimeUnit.SECONDS);
+
+    /**
+     * Single thread, tasks are executed one by one in submission order.
+     */
+    public static final TaskExecutor SERIAL = new TaskExecutor("serial", 1, 1,
+            KEEP_ALIVE, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>());
+
+    static {
+        SERIAL.allowCoreThreadTimeOut(true);
+    }
+
+    private final String name;
+    private volatile Saturation saturation = Saturation.REJECT;
+    private final ArrayDeque<Runnable> spill = new ArrayDeque<Runnable>();
+    private final AtomicInteger spillDepth = new AtomicInteger();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong spilled = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private static PriorityTaskQueue queue(int capacity) {
+        return new PriorityTaskQueue(capacity, STARVATION_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Pool which grows instead of queueing: a task which finds no idle thread starts a new one,
+     * it's queued only when the pool has max threads. Idle threads are stopped after keepAlive,
+     * core threads too.
+     *
+     * @param name      name of the executor, threads are named after it
+     * @param core      threads kept while there is work
+     * @param max       hard cap of threads
+     * @param keepAlive idle time before a thread is stopped
+     * @param unit      unit of keepAlive
+     * @return
+     */
+    public static TaskExecutor elastic(String name, int core, int max, long keepAlive, TimeUnit unit) {
+        final PriorityTaskQueue queue = queue(Integer.MAX_VALUE);
+        final TaskExecutor executor = new TaskExecutor(name, core, max, keepAlive, unit, queue);
+        queue.setElastic(executor);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * @return true if this pool grows instead of queueing
+     */
+    public boolean isElastic() {
+        final BlockingQueue<Runnable> queue = getQueue();
+        return queue instanceof PriorityTaskQueue && ((PriorityTaskQueue) queue).isElastic();
+    }
+
+    /**
+     * Queue a runnable the pool didn't take, even if an elastic pool could grow
+     */
+    private boolean requeue(Runnable r) {
+        final BlockingQueue<Runnable> queue = getQueue();
+        return queue instanceof PriorityTaskQueue ? ((PriorityTaskQueue) queue).force(r) : queue.offer(r);
+    }
+
+    /**
+     * @param name  name of the executor, threads are named after it
+     * @param core  core pool size
+     * @param max   maximum pool size
+     * @param keepAlive idle time before a thread above core size is stopped
+     * @param unit  unit of keepAlive
+     * @param queue work queue
+     */
+    public TaskExecutor(String name, int core, int max, long keepAlive, TimeUnit unit, BlockingQueue<Runnable> queue) {
+        super(core, max, keepAlive, unit, queue, new NamedThreadFactory(name));
+        this.name = name;
+        setRejectedExecutionHandler(new SaturationHandler());
+    }
+
+    /**
+     * @param policy what to do with tasks submitted while saturated, {@link Saturation#REJECT} by default
+     */
+    public void setSaturationPolicy(Saturation policy) {
+        if (policy == null) {
+            throw new IllegalArgumentException("Saturation policy can't be null");
+        }
+        saturation = policy;
+    }
+
+    public Saturation getSaturationPolicy() {
+        return saturation;
+    }
+
+    /**
+     * @return how many tasks were rejected since start
+     */
+    public long getRejectedCount() {
+        return rejected.get();
+    }
+
+    /**
+     * @return how many tasks went to the spill queue since start
+     */
+    public long getSpilledCount() {
+        return spilled.get();
+    }
+
+    /**
+     * @return how many queued prefetch tasks were dropped since start
+     */
+    public long getDroppedCount() {
+        return dropped.get();
+    }
+
+    /**
+     * @return how many tasks are waiting in the spill queue
+     */
+    public int getSpillDepth() {
+        return spillDepth.get();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (spillDepth.get() > 0 && saturation == Saturation.SPILL && !isShutdown()) {
+            spill(command);
+            return;
+        }
+        super.execute(command);
+    }
+
+    private void spill(Runnable r) {
+        synchronized (spill) {
+            spill.addLast(r);
+            spillDepth.incrementAndGet();
+        }
+        spilled.incrementAndGet();
+        // a thread may have finished before the task was spilled
+        drainSpill();
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        if (spillDepth.get() > 0) {
+            drainSpill();
+        }
+    }
+
+    private void drainSpill() {
+        synchronized (spill) {
+            Runnable r;
+            while ((r = spill.peekFirst()) != null && requeue(r)) {
+                spill.pollFirst();
+                spillDepth.decrementAndGet();
+            }
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return how many tasks are waiting for a thread
+     */
+    public int getQueueDepth() {
+        return getQueue().size();
+    }
+
+    /**
+     * @param priority
+     * @return how many tasks of the priority are waiting for a thread
+     */
+    public int getQueueDepth(CocoTask.Priority priority) {
+        BlockingQueue<Runnable> queue = getQueue();
+        if (queue instanceof PriorityTaskQueue) {
+            return ((PriorityTaskQueue) queue).size(priority);
+        }
+        return priority == CocoTask.Priority.NORMAL ? queue.size() : 0;
+    }
+
+    /**
+     * @param priority
+     * @return how many tasks of the priority have left the queue
+     */
+    public long getDequeuedCount(CocoTask.Priority priority) {
+        BlockingQueue<Runnable> queue = getQueue();
+        return queue instanceof PriorityTaskQueue ? ((PriorityTaskQueue) queue).getWaitCount(priority) : 0;
+    }
+
+    /**
+     * @param priority
+     * @param unit
+     * @return average time tasks of the priority waited in the queue for a thread, run time not included
+     */
+    public long getAverageWait(CocoTask.Priority priority, TimeUnit unit) {
+        BlockingQueue<Runnable> queue = getQueue();
+        return queue instanceof PriorityTaskQueue ? ((PriorityTaskQueue) queue).getAverageWait(priority, unit) : 0;
+    }
+
+    /**
+     * @param priority
+     * @param unit
+     * @return longest time a task of the priority waited in the queue for a thread, run time not included
+     */
+    public long getMaxWait(CocoTask.Priority priority, TimeUnit unit) {
+        BlockingQueue<Runnable> queue = getQueue();
+        return queue instanceof PriorityTaskQueue ? ((PriorityTaskQueue) queue).getMaxWait(priority, unit) : 0;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskExecutor[" + name + ", active=" + getActiveCount() + ", pool=" + getPoolSize()
+                + ", queued=" + getQueueDepth() + ", completed=" + getCompletedTaskCount() + "]";
+    }
+
+    /**
+     * Tell a runnable that it will never run
+     */
+    static void reject(Runnable r, RejectedExecutionException e) {
+        if (r instanceof PriorityTaskQueue.Prioritized) {
+            ((PriorityTaskQueue.Prioritized) r).reject(e);
+        } else if (r instanceof Future) {
+            ((Future<?>) r).cancel(false);
+        }
+    }
+
+    private final class SaturationHandler implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            if (!isShutdown()) {
+                if (isElastic() && requeue(r)) {
+                    // an elastic pool at its cap, or a race with another submitter for the last thread
+                    return;
+                }
+                switch (saturation) {
+                    case SPILL:
+                        spill(r);
+                        return;
+                    case DROP_OLDEST_PREFETCH:
+                        if (PriorityTaskQueue.priorityOf(r) == CocoTask.Priority.PREFETCH) {
+                            // a prefetch doesn't push out an older one
+                            break;
+                        }
+                        BlockingQueue<Runnable> queue = getQueue();
+                        Runnable oldest = queue instanceof PriorityTaskQueue
+                                ? ((PriorityTaskQueue) queue).poll(CocoTask.Priority.PREFETCH) : null;
+                        if (oldest != null) {
+                            dropped.incrementAndGet();
+                            // take the freed slot before the dropped one is told, it may submit a follow-on
+                            final boolean queued = requeue(r);
+                            reject(oldest, new RejectedExecutionException(
+                                    "Task " + oldest + " dropped from " + TaskExecutor.this));
+                            if (queued) {
+                                return;
+                            }
+                        }
+                        break;
+                    default:
+                        break;
+                }
+            }
+            rejected.incrementAndGet();
+            throw new RejectedExecutionException("Task " + r + " rejected from " + TaskExecutor.this);
+        }
+    }
+
+    private static final class NamedThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger(1);
+        private final String name;
+
+        NamedThreadFactory(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            return new Thread(r, "CocoTask " + name + " #" + count.getAndIncrement());
+        }
+    }
+}
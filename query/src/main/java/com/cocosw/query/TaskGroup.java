@@ -0,0 +1,192 @@
+package com.cocosw.query;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the works of several tasks in parallel, and calls back once on main thread with the outcome of each one.
+ * <p/>
+ * Each work runs on the executor of its task, or the executor of the group if the task doesn't choose one.
+ * A work not started when the group thread is free runs on the group thread.
+ * Callbacks and progress of the member tasks are not used, the group reports how many works are done
+ * by {@link #onProgress(TaskProgress)} with the done count and total count.
+ * <p/>
+ * The callback always gets the outcomes in the order of the tasks, with {@link #failFast()} a failure
+ * cancels the works not finished yet and their outcomes hold a {@link CancellationException}.
+ *
+ * @see CocoTask#all(Collection)
+ * @see CocoQuery#tasks(Collection, boolean, CocoTask.Listener)
+ */
+public class TaskGroup extends CocoTask<List<TaskGroup.Outcome>> {
+
+    /**
+     * Outcome of a member task
+     */
+    public static final class Outcome {
+        private final CocoTask<?> task;
+        private final Object result;
+        private final Exception error;
+
+        Outcome(CocoTask<?> task, Object result, Exception error) {
+            this.task = task;
+            this.result = result;
+            this.error = error;
+        }
+
+        public CocoTask<?> getTask() {
+            return task;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        /**
+         * @param <V>
+         * @return result of the work, null if it failed
+         */
+        @SuppressWarnings("unchecked")
+        public <V> V getResult() {
+            return (V) result;
+        }
+
+        /**
+         * @return exception of the work, null if it succeeded
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+
+    private final CocoTask<?>[] tasks;
+    private volatile boolean failFast;
+
+    public TaskGroup(Collection<? extends CocoTask<?>> tasks) {
+        this.tasks = tasks.toArray(new CocoTask<?>[tasks.size()]);
+    }
+
+    /**
+     * Cancel the other works when one fails
+     *
+     * @return
+     */
+    public TaskGroup failFast() {
+        this.failFast = true;
+        return this;
+    }
+
+    /**
+     * @return how many tasks are in the group
+     */
+    public int size() {
+        return tasks.length;
+    }
+
+    @Override
+    public List<Outcome> backgroundWork() throws Exception {
+        final int total = tasks.length;
+        final Outcome[] outcomes = new Outcome[total];
+        final CountDownLatch latch = new CountDownLatch(total);
+        final AtomicInteger done = new AtomicInteger();
+        final Member[] members = new Member[total];
+        for (int i = 0; i < total; i++) {
+            members[i] = new Member(i, members, outcomes, latch, done);
+        }
+        final Executor own = getExecutor();
+        for (Member member : members) {
+            try {
+                tasks[member.index].target(own).execute(member);
+            } catch (RejectedExecutionException e) {
+                // run it below on this thread
+            }
+        }
+        try {
+            // works not started yet run on this thread, so a busy executor can't block the group,
+            // except serial ones which must keep their order
+            for (Member member : members) {
+                if (!tasks[member.index].isSerial()) {
+                    member.run();
+                    // with failFast a failing member cancels this one with an interrupt, which is not for the group
+                    if (Thread.interrupted() && isWorkCancelled()) {
+                        throw new InterruptedException();
+                    }
+                }
+            }
+            latch.await();
+        } catch (InterruptedException e) {
+            for (Member member : members) {
+                member.cancel(true);
+            }
+            throw e;
+        }
+        return new ArrayList<Outcome>(Arrays.asList(outcomes));
+    }
+
+    private final class Member extends FutureTask<Object> implements PriorityTaskQueue.Prioritized {
+        final int index;
+        private final Member[] members;
+        private final Outcome[] outcomes;
+        private final CountDownLatch latch;
+        private final AtomicInteger done;
+
+        Member(final int index, Member[] members, Outcome[] outcomes, CountDownLatch latch, AtomicInteger done) {
+            super(new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    return tasks[index].backgroundWork();
+                }
+            });
+            this.index = index;
+            this.members = members;
+            this.outcomes = outcomes;
+            this.latch = latch;
+            this.done = done;
+        }
+
+        @Override
+        public CocoTask.Priority priority() {
+            return tasks[index].getPriority();
+        }
+
+        @Override
+        public void reject(RejectedExecutionException e) {
+            setException(e);
+        }
+
+        @Override
+        protected void done() {
+            Object result = null;
+            Exception error = null;
+            try {
+                result = get();
+            } catch (CancellationException e) {
+                error = e;
+            } catch (InterruptedException e) {
+                error = e;
+            } catch (ExecutionException e) {
+                error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+            }
+            outcomes[index] = new Outcome(tasks[index], result, error);
+            if (error != null && failFast) {
+                for (Member member : members) {
+                    if (member != this) {
+                        member.cancel(true);
+                    }
+                }
+            }
+            final int count = done.incrementAndGet();
+            publishProgress(count, tasks.length);
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.cocosw.query;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Built in {@link TaskObserver} keeping latency histograms of queue wait, execution and delivery
+ * for each task class, so slow tasks can be found in the field.
+ * <pre>
+ * TaskMetrics metrics = new TaskMetrics();
+ * CocoTask.setObserver(metrics);
+ * ...
+ * Log.d(TAG, metrics.get(LoadFeedTask.class).toString());
+ * </pre>
+ */
+public class TaskMetrics implements TaskObserver {
+
+    /**
+     * Metrics of one task class
+     */
+    public static final class Stats {
+        private final LatencyHistogram queueWait = new LatencyHistogram();
+        private final LatencyHistogram execution = new LatencyHistogram();
+        private final LatencyHistogram delivery = new LatencyHistogram();
+        private final AtomicLong failures = new AtomicLong();
+        private final AtomicLong cancellations = new AtomicLong();
+
+        /**
+         * @return time tasks waited in the queue of their executor
+         */
+        public LatencyHistogram getQueueWait() {
+            return queueWait;
+        }
+
+        /**
+         * @return time spent in {@link CocoTask#backgroundWork()}
+         */
+        public LatencyHistogram getExecution() {
+            return execution;
+        }
+
+        /**
+         * @return time results waited for main thread
+         */
+        public LatencyHistogram getDelivery() {
+            return delivery;
+        }
+
+        public long getFailureCount() {
+            return failures.get();
+        }
+
+        public long getCancelCount() {
+            return cancellations.get();
+        }
+
+        void reset() {
+            queueWait.reset();
+            execution.reset();
+            delivery.reset();
+            failures.set(0);
+            cancellations.set(0);
+        }
+
+        @Override
+        public String toString() {
+            return "queue[" + queueWait + "], execution[" + execution + "], delivery[" + delivery
+                    + "], failures=" + failures + ", cancelled=" + cancellations;
+        }
+    }
+
+    private final ConcurrentHashMap<Class<?>, Stats> stats = new ConcurrentHashMap<Class<?>, Stats>();
+
+    private Stats of(CocoTask<?> task) {
+        final Class<?> type = task.getClass();
+        Stats s = stats.get(type);
+        if (s == null) {
+            final Stats created = new Stats();
+            s = stats.putIfAbsent(type, created);
+            if (s == null) {
+                s = created;
+            }
+        }
+        return s;
+    }
+
+    @Override
+    public void onSubmit(CocoTask<?> task) {
+    }
+
+    @Override
+    public void onStart(CocoTask<?> task, long queueNanos) {
+        of(task).queueWait.record(queueNanos);
+    }
+
+    @Override
+    public void onFinish(CocoTask<?> task, long executionNanos, Exception error) {
+        final Stats s = of(task);
+        s.execution.record(executionNanos);
+        if (error != null) {
+            s.failures.incrementAndGet();
+        }
+    }
+
+    @Override
+    public void onCallback(CocoTask<?> task, long deliveryNanos) {
+        of(task).delivery.record(deliveryNanos);
+    }
+
+    @Override
+    public void onCancel(CocoTask<?> task) {
+        of(task).cancellations.incrementAndGet();
+    }
+
+    /**
+     * @param type class of the tasks
+     * @return metrics of the class, or null if no task of it was observed
+     */
+    public Stats get(Class<?> type) {
+        return stats.get(type);
+    }
+
+    /**
+     * @return metrics of all the observed task classes
+     */
+    public Map<Class<?>, Stats> getAll() {
+        return Collections.unmodifiableMap(new HashMap<Class<?>, Stats>(stats));
+    }
+
+    public void reset() {
+        for (Stats s : stats.values()) {
+            s.reset();
+        }
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("TaskMetrics");
+        for (Map.Entry<Class<?>, Stats> entry : stats.entrySet()) {
+            sb.append("\n  ").append(entry.getKey().getName()).append(": ").append(entry.getValue());
+        }
+        return sb.toString();
+    }
+}
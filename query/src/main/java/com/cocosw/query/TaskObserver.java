@@ -0,0 +1,46 @@
+package com.cocosw.query;
+
+/**
+ * Receives the lifecycle events of all tasks, e.g. to report latency in field telemetry.
+ * <p/>
+ * Events are sent from the thread where they happen, submit, callback and cancel on main thread,
+ * start and finish on the worker thread, so an observer must be thread safe and fast.
+ * A task retried by its {@link RetryPolicy} is submitted, started and finished once per attempt.
+ *
+ * @see CocoTask#setObserver(TaskObserver)
+ * @see TaskMetrics
+ */
+public interface TaskObserver {
+
+    /**
+     * The work is handed to its executor
+     */
+    void onSubmit(CocoTask<?> task);
+
+    /**
+     * {@link CocoTask#backgroundWork()} starts
+     *
+     * @param queueNanos time waited for a thread
+     */
+    void onStart(CocoTask<?> task, long queueNanos);
+
+    /**
+     * {@link CocoTask#backgroundWork()} returned or threw
+     *
+     * @param executionNanos time spent in backgroundWork
+     * @param error          exception thrown, or null
+     */
+    void onFinish(CocoTask<?> task, long executionNanos, Exception error);
+
+    /**
+     * The result is about to be delivered to the callbacks of the task
+     *
+     * @param deliveryNanos time the result waited for main thread
+     */
+    void onCallback(CocoTask<?> task, long deliveryNanos);
+
+    /**
+     * The task is cancelled, or aborted by a timeout or a rejection
+     */
+    void onCancel(CocoTask<?> task);
+}
@@ -0,0 +1,70 @@
+package com.cocosw.query;
+
+/**
+ * Progress of a running task, delivered to {@link CocoTask#onProgress(TaskProgress)} on main thread.
+ * <p/>
+ * The instance is reused by the task, read it during the call only.
+ */
+public final class TaskProgress {
+
+    private double fraction;
+    private long current;
+    private long total;
+    private Object payload;
+
+    TaskProgress() {
+    }
+
+    void set(double fraction, long current, long total, Object payload) {
+        this.fraction = fraction;
+        this.current = current;
+        this.total = total;
+        this.payload = payload;
+    }
+
+    void set(TaskProgress other) {
+        set(other.fraction, other.current, other.total, other.payload);
+    }
+
+    /**
+     * @return progress from 0 to 1
+     */
+    public double getFraction() {
+        return fraction;
+    }
+
+    /**
+     * @return progress from 0 to 100
+     */
+    public int getPercent() {
+        return (int) Math.round(fraction * 100);
+    }
+
+    /**
+     * @return count of units done, -1 if only a fraction was published
+     */
+    public long getCurrent() {
+        return current;
+    }
+
+    /**
+     * @return count of all units, -1 if only a fraction was published
+     */
+    public long getTotal() {
+        return total;
+    }
+
+    /**
+     * @param <P>
+     * @return object published with the progress, or null
+     */
+    @SuppressWarnings("unchecked")
+    public <P> P getPayload() {
+        return (P) payload;
+    }
+
+    @Override
+    public String toString() {
+        return "TaskProgress[" + getPercent() + "%, " + current + "/" + total + "]";
+    }
+}
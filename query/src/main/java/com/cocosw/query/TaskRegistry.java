@@ -0,0 +1,119 @@
+package com.cocosw.query;
+
+import android.annotation.TargetApi;
+import android.app.Activity;
+import android.app.Application;
+import android.os.Build;
+import android.os.Bundle;
+
+import java.util.IdentityHashMap;
+
+/**
+ * Tasks started by a CocoQuery, cancelled together by {@link #destroy()}.
+ * <p/>
+ * Tasks are removed when they are delivered or cancelled, and on Ice Cream Sandwich and above the registry
+ * is destroyed with its activity. Only accessed on main thread.
+ */
+final class TaskRegistry {
+
+    private final IdentityHashMap<CocoTask<?>, Boolean> tasks = new IdentityHashMap<CocoTask<?>, Boolean>();
+    private boolean destroyed;
+    private Object binding;
+
+    /**
+     * @return false if the registry is destroyed and the task should not start
+     */
+    boolean add(CocoTask<?> task) {
+        if (destroyed) {
+            return false;
+        }
+        tasks.put(task, Boolean.TRUE);
+        task.registry = this;
+        return true;
+    }
+
+    void remove(CocoTask<?> task) {
+        tasks.remove(task);
+    }
+
+    int size() {
+        return tasks.size();
+    }
+
+    boolean isDestroyed() {
+        return destroyed;
+    }
+
+    /**
+     * Destroy the registry when the activity is destroyed
+     */
+    void bind(Activity activity) {
+        if (binding == null && !destroyed && Build.VERSION.SDK_INT >= Build.VERSION_CODES.ICE_CREAM_SANDWICH) {
+            binding = new LifecycleBinding(this, activity);
+        }
+    }
+
+    void destroy() {
+        if (destroyed) {
+            return;
+        }
+        destroyed = true;
+        if (binding != null) {
+            ((LifecycleBinding) binding).unbind();
+            binding = null;
+        }
+        CocoTask<?>[] running = tasks.keySet().toArray(new CocoTask<?>[tasks.size()]);
+        tasks.clear();
+        for (CocoTask<?> task : running) {
+            task.registry = null;
+            task.cancel();
+        }
+    }
+
+    @TargetApi(Build.VERSION_CODES.ICE_CREAM_SANDWICH)
+    private static final class LifecycleBinding implements Application.ActivityLifecycleCallbacks {
+        private final TaskRegistry registry;
+        private final Activity activity;
+
+        LifecycleBinding(TaskRegistry registry, Activity activity) {
+            this.registry = registry;
+            this.activity = activity;
+            activity.getApplication().registerActivityLifecycleCallbacks(this);
+        }
+
+        void unbind() {
+            activity.getApplication().unregisterActivityLifecycleCallbacks(this);
+        }
+
+        @Override
+        public void onActivityDestroyed(Activity activity) {
+            if (activity == this.activity) {
+                registry.destroy();
+            }
+        }
+
+        @Override
+        public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+        }
+
+        @Override
+        public void onActivityStarted(Activity activity) {
+        }
+
+        @Override
+        public void onActivityResumed(Activity activity) {
+        }
+
+        @Override
+        public void onActivityPaused(Activity activity) {
+        }
+
+        @Override
+        public void onActivityStopped(Activity activity) {
+        }
+
+        @Override
+        public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package com.cocosw.query;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Delivered to {@link CocoTask#failcallback(Object, Exception)} when a task runs past its timeout or deadline.
+ *
+ * @see CocoTask#timeout(long, java.util.concurrent.TimeUnit)
+ * @see CocoTask#deadline(long)
+ */
+public class TaskTimeoutException extends TimeoutException {
+
+    private static final long serialVersionUID = 1L;
+
+    public TaskTimeoutException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,202 @@
+package com.cocosw.query;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timer wheel shared by all tasks for timeouts and retry delays, one thread for any number of timeouts.
+ * <p/>
+ * Scheduling and cancelling never lock: new timeouts are queued and moved into the wheel by the timer thread
+ * at the next tick, cancelled ones are dropped when their bucket is visited. The thread parks while nothing
+ * is scheduled, and is started on first use.
+ * <p/>
+ * Actions run on the timer thread, so they must be short, e.g. cancel a future or submit to an executor.
+ */
+final class TaskTimer implements Runnable {
+
+    static final TaskTimer SHARED = new TaskTimer(10, TimeUnit.MILLISECONDS, 512);
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final ConcurrentLinkedQueue<Timeout> added = new ConcurrentLinkedQueue<Timeout>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private volatile Thread thread;
+    private long startTime;
+    private long tick;
+
+    /**
+     * @param tick      duration of a tick, timeouts fire up to one tick late
+     * @param unit
+     * @param wheelSize count of buckets, rounded up to a power of two
+     */
+    TaskTimer(long tick, TimeUnit unit, int wheelSize) {
+        tickNanos = unit.toNanos(tick);
+        int size = 1;
+        while (size < wheelSize) {
+            size <<= 1;
+        }
+        wheel = new Bucket[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new Bucket();
+        }
+        mask = size - 1;
+    }
+
+    /**
+     * Run the action after the delay on the timer thread
+     */
+    Timeout schedule(Runnable action, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(action, System.nanoTime() + unit.toNanos(Math.max(0, delay)));
+        added.offer(timeout);
+        if (pending.getAndIncrement() == 0) {
+            start();
+        }
+        return timeout;
+    }
+
+    private void start() {
+        Thread t = thread;
+        if (t == null) {
+            synchronized (this) {
+                t = thread;
+                if (t == null) {
+                    t = new Thread(this, "CocoTask timer");
+                    t.setDaemon(true);
+                    thread = t;
+                    t.start();
+                    return;
+                }
+            }
+        }
+        LockSupport.unpark(t);
+    }
+
+    @Override
+    public void run() {
+        startTime = System.nanoTime();
+        for (; ; ) {
+            if (pending.get() == 0) {
+                LockSupport.park(this);
+                // nothing was in the wheel, skip the ticks of the idle period
+                tick = Math.max(tick, (System.nanoTime() - startTime) / tickNanos);
+                continue;
+            }
+            long deadline = startTime + (tick + 1) * tickNanos;
+            long sleep = deadline - System.nanoTime();
+            if (sleep > 0) {
+                LockSupport.parkNanos(this, sleep);
+                if (deadline - System.nanoTime() > 0) {
+                    continue;
+                }
+            }
+            transferAdded();
+            expire(wheel[(int) (tick & mask)], System.nanoTime());
+            tick++;
+        }
+    }
+
+    private void transferAdded() {
+        Timeout timeout;
+        while ((timeout = added.poll()) != null) {
+            if (timeout.isCancelled()) {
+                pending.decrementAndGet();
+                continue;
+            }
+            // the bucket of a tick is expired at the end of the tick, so the deadline has passed by then
+            long ticks = Math.max(tick, (timeout.deadline - startTime) / tickNanos);
+            timeout.rounds = Math.max(0, (ticks - tick) / wheel.length);
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expire(Bucket bucket, long now) {
+        Timeout timeout = bucket.head;
+        while (timeout != null) {
+            Timeout next = timeout.next;
+            if (timeout.isCancelled()) {
+                bucket.remove(timeout);
+                pending.decrementAndGet();
+            } else if (timeout.rounds > 0) {
+                timeout.rounds--;
+            } else if (timeout.deadline - now <= 0) {
+                bucket.remove(timeout);
+                pending.decrementAndGet();
+                timeout.fire();
+            }
+            timeout = next;
+        }
+    }
+
+    private static final class Bucket {
+        Timeout head;
+        Timeout tail;
+
+        void add(Timeout timeout) {
+            timeout.prev = tail;
+            timeout.next = null;
+            if (tail == null) {
+                head = timeout;
+            } else {
+                tail.next = timeout;
+            }
+            tail = timeout;
+        }
+
+        void remove(Timeout timeout) {
+            if (timeout.prev == null) {
+                head = timeout.next;
+            } else {
+                timeout.prev.next = timeout.next;
+            }
+            if (timeout.next == null) {
+                tail = timeout.prev;
+            } else {
+                timeout.next.prev = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+        }
+    }
+
+    static final class Timeout {
+        private static final int WAITING = 0;
+        private static final int CANCELLED = 1;
+        private static final int FIRED = 2;
+
+        private final Runnable action;
+        final long deadline;
+        private final AtomicInteger state = new AtomicInteger();
+        long rounds;
+        Timeout prev;
+        Timeout next;
+
+        Timeout(Runnable action, long deadline) {
+            this.action = action;
+            this.deadline = deadline;
+        }
+
+        /**
+         * @return false if the action has already run
+         */
+        boolean cancel() {
+            return state.compareAndSet(WAITING, CANCELLED) || state.get() == CANCELLED;
+        }
+
+        boolean isCancelled() {
+            return state.get() == CANCELLED;
+        }
+
+        void fire() {
+            if (state.compareAndSet(WAITING, FIRED)) {
+                try {
+                    action.run();
+                } catch (Throwable e) {
+                    android.util.Log.w("TaskTimer", e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,204 @@
+package com.cocosw.query;
+
+import android.text.Spanned;
+import android.text.SpannedString;
+import android.util.SparseArray;
+import android.view.View;
+
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Mutations of the chains called off main thread, see {@link CocoQuery#threadSafe(boolean)}.
+ * <p/>
+ * Operations are queued without lock and drained on main thread by a single post,
+ * then applied as one {@link ViewBatch}, so the order of writes to a view is kept.
+ * Text is copied when it's recorded, and a view selected by id is found once per drain.
+ */
+final class UiQueue implements Runnable {
+
+    /**
+     * Op of a background color, the other ops use the property flags of {@link ViewBatch}
+     */
+    private static final int BACKGROUND_COLOR = -1;
+
+    private final CocoQuery<?> query;
+    private final ConcurrentLinkedQueue<Op> ops = new ConcurrentLinkedQueue<Op>();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    UiQueue(CocoQuery<?> query) {
+        this.query = query;
+    }
+
+    /**
+     * @param view target view, or null if it should be found by id on main thread
+     * @param id   id of target view
+     */
+    ViewBatch.Record target(View view, int id) {
+        return new Target(view, id);
+    }
+
+    private void add(Op op) {
+        ops.offer(op);
+        if (scheduled.compareAndSet(false, true)) {
+            Frames.postMain(this);
+        }
+    }
+
+    @Override
+    public void run() {
+        scheduled.set(false);
+        ViewBatch batch = new ViewBatch(query);
+        SparseArray<View> found = null;
+        Op op;
+        while ((op = ops.poll()) != null) {
+            View view = op.view;
+            if (view == null) {
+                if (found == null) {
+                    found = new SparseArray<View>();
+                }
+                int i = found.indexOfKey(op.id);
+                if (i >= 0) {
+                    view = found.valueAt(i);
+                } else {
+                    view = query.findView(op.id);
+                    found.put(op.id, view);
+                }
+            }
+            if (view != null) {
+                op.replay(batch.of(view));
+            }
+        }
+        batch.apply();
+    }
+
+    private static final class Op {
+        final View view;
+        final int id;
+        final int property;
+        final int value;
+        final Object object;
+
+        Op(View view, int id, int property, int value, Object object) {
+            this.view = view;
+            this.id = id;
+            this.property = property;
+            this.value = value;
+            this.object = object;
+        }
+
+        void replay(ViewBatch.Pending p) {
+            switch (property) {
+                case ViewBatch.TEXT:
+                    p.text((CharSequence) object);
+                    break;
+                case ViewBatch.TEXT_COLOR:
+                    p.textColor(value);
+                    break;
+                case ViewBatch.VISIBILITY:
+                    p.visibility(value);
+                    break;
+                case ViewBatch.ENABLED:
+                    p.enabled(value != 0);
+                    break;
+                case ViewBatch.CHECKED:
+                    p.checked(value != 0);
+                    break;
+                case ViewBatch.BACKGROUND:
+                    p.background(value);
+                    break;
+                case BACKGROUND_COLOR:
+                    p.backgroundColor(value);
+                    break;
+                case ViewBatch.IMAGE:
+                    p.image(object);
+                    break;
+                case ViewBatch.WIDTH:
+                    p.width(value);
+                    break;
+                case ViewBatch.HEIGHT:
+                    p.height(value);
+                    break;
+                case ViewBatch.MARGIN:
+                    int[] m = (int[]) object;
+                    p.margin(m[0], m[1], m[2], m[3]);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Immutable copy, a builder passed by the caller may change before it's applied
+     */
+    private static CharSequence copy(CharSequence text) {
+        if (text == null) {
+            return null;
+        }
+        return text instanceof Spanned ? new SpannedString(text) : text.toString();
+    }
+
+    private final class Target extends ViewBatch.Record {
+        private final View view;
+        private final int id;
+
+        Target(View view, int id) {
+            this.view = view;
+            this.id = id;
+        }
+
+        @Override
+        void text(CharSequence text) {
+            add(new Op(view, id, ViewBatch.TEXT, 0, copy(text)));
+        }
+
+        @Override
+        void textColor(int color) {
+            add(new Op(view, id, ViewBatch.TEXT_COLOR, color, null));
+        }
+
+        @Override
+        void visibility(int visibility) {
+            add(new Op(view, id, ViewBatch.VISIBILITY, visibility, null));
+        }
+
+        @Override
+        void enabled(boolean enabled) {
+            add(new Op(view, id, ViewBatch.ENABLED, enabled ? 1 : 0, null));
+        }
+
+        @Override
+        void checked(boolean checked) {
+            add(new Op(view, id, ViewBatch.CHECKED, checked ? 1 : 0, null));
+        }
+
+        @Override
+        void background(int resid) {
+            add(new Op(view, id, ViewBatch.BACKGROUND, resid, null));
+        }
+
+        @Override
+        void backgroundColor(int color) {
+            add(new Op(view, id, BACKGROUND_COLOR, color, null));
+        }
+
+        @Override
+        void image(Object image) {
+            add(new Op(view, id, ViewBatch.IMAGE, 0, image));
+        }
+
+        @Override
+        void width(int px) {
+            add(new Op(view, id, ViewBatch.WIDTH, px, null));
+        }
+
+        @Override
+        void height(int px) {
+            add(new Op(view, id, ViewBatch.HEIGHT, px, null));
+        }
+
+        @Override
+        void margin(int left, int top, int right, int bottom) {
+            add(new Op(view, id, ViewBatch.MARGIN, 0, new int[]{left, top, right, bottom}));
+        }
+    }
+}
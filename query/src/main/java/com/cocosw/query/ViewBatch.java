@@ -0,0 +1,260 @@
+package com.cocosw.query;
+
+import android.graphics.Bitmap;
+import android.graphics.drawable.Drawable;
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+/**
+ * Mutations recorded between {@link CocoQuery#beginBatch()} and {@link CocoQuery#commit()}.
+ * <p/>
+ * Writes are kept per view and per property, so only the last write of a property is applied,
+ * and width/height/margin end up in a single setLayoutParams call.
+ */
+final class ViewBatch implements Runnable {
+
+    private final CocoQuery<?> query;
+    private final ArrayList<Pending> pending = new ArrayList<Pending>();
+    private final HashMap<View, Pending> index = new HashMap<View, Pending>();
+    private boolean closed;
+
+    ViewBatch(CocoQuery<?> query) {
+        this.query = query;
+    }
+
+    Pending of(View view) {
+        Pending p = index.get(view);
+        if (p == null) {
+            p = new Pending(view);
+            index.put(view, p);
+            pending.add(p);
+        }
+        return p;
+    }
+
+    /**
+     * No more mutation can be recorded after commit
+     */
+    void close() {
+        closed = true;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    void apply() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        AbstractViewQuery<?> q = query.newQuery(null);
+        for (Pending p : pending) {
+            q.view = p.view;
+            p.apply(q);
+        }
+        pending.clear();
+        index.clear();
+    }
+
+    @Override
+    public void run() {
+        apply();
+    }
+
+    static final int TEXT = 1;
+    static final int TEXT_COLOR = 1 << 1;
+    static final int VISIBILITY = 1 << 2;
+    static final int ENABLED = 1 << 3;
+    static final int CHECKED = 1 << 4;
+    static final int BACKGROUND = 1 << 5;
+    static final int IMAGE = 1 << 6;
+    static final int WIDTH = 1 << 7;
+    static final int HEIGHT = 1 << 8;
+    static final int MARGIN = 1 << 9;
+    static final int LAYOUT = WIDTH | HEIGHT | MARGIN;
+
+    /**
+     * Receiver of the mutations which can be recorded
+     */
+    abstract static class Record {
+
+        abstract void text(CharSequence text);
+
+        abstract void textColor(int color);
+
+        abstract void visibility(int visibility);
+
+        abstract void enabled(boolean enabled);
+
+        abstract void checked(boolean checked);
+
+        abstract void background(int resid);
+
+        abstract void backgroundColor(int color);
+
+        abstract void image(Object image);
+
+        abstract void width(int px);
+
+        abstract void height(int px);
+
+        abstract void margin(int left, int top, int right, int bottom);
+    }
+
+    static final class Pending extends Record {
+
+        final View view;
+        private int dirty;
+
+        private CharSequence text;
+        private int textColor;
+        private int visibility;
+        private boolean enabled;
+        private boolean checked;
+        private int background;
+        private boolean backgroundIsColor;
+        private Object image;
+        private int width;
+        private int height;
+        private int left, top, right, bottom;
+
+        Pending(View view) {
+            this.view = view;
+        }
+
+        @Override
+        void text(CharSequence text) {
+            this.text = text;
+            dirty |= TEXT;
+        }
+
+        @Override
+        void textColor(int color) {
+            this.textColor = color;
+            dirty |= TEXT_COLOR;
+        }
+
+        @Override
+        void visibility(int visibility) {
+            this.visibility = visibility;
+            dirty |= VISIBILITY;
+        }
+
+        @Override
+        void enabled(boolean enabled) {
+            this.enabled = enabled;
+            dirty |= ENABLED;
+        }
+
+        @Override
+        void checked(boolean checked) {
+            this.checked = checked;
+            dirty |= CHECKED;
+        }
+
+        @Override
+        void background(int resid) {
+            this.background = resid;
+            this.backgroundIsColor = false;
+            dirty |= BACKGROUND;
+        }
+
+        @Override
+        void backgroundColor(int color) {
+            this.background = color;
+            this.backgroundIsColor = true;
+            dirty |= BACKGROUND;
+        }
+
+        @Override
+        void image(Object image) {
+            this.image = image;
+            dirty |= IMAGE;
+        }
+
+        @Override
+        void width(int px) {
+            this.width = px;
+            dirty |= WIDTH;
+        }
+
+        @Override
+        void height(int px) {
+            this.height = px;
+            dirty |= HEIGHT;
+        }
+
+        @Override
+        void margin(int left, int top, int right, int bottom) {
+            this.left = left;
+            this.top = top;
+            this.right = right;
+            this.bottom = bottom;
+            dirty |= MARGIN;
+        }
+
+        void apply(AbstractViewQuery<?> q) {
+            if ((dirty & LAYOUT) != 0) {
+                applyLayout();
+            }
+            if ((dirty & VISIBILITY) != 0) {
+                q.visibility(visibility);
+            }
+            if ((dirty & TEXT) != 0) {
+                q.text(text);
+            }
+            if ((dirty & TEXT_COLOR) != 0) {
+                q.textColor(textColor);
+            }
+            if ((dirty & ENABLED) != 0) {
+                q.enabled(enabled);
+            }
+            if ((dirty & CHECKED) != 0) {
+                q.checked(checked);
+            }
+            if ((dirty & BACKGROUND) != 0) {
+                if (backgroundIsColor) {
+                    q.backgroundColor(background);
+                } else {
+                    q.background(background);
+                }
+            }
+            if ((dirty & IMAGE) != 0) {
+                if (image instanceof Integer) {
+                    q.image((Integer) image);
+                } else if (image instanceof Drawable) {
+                    q.image((Drawable) image);
+                } else {
+                    q.image((Bitmap) image);
+                }
+            }
+            dirty = 0;
+            text = null;
+            image = null;
+        }
+
+        private void applyLayout() {
+            ViewGroup.LayoutParams lp = view.getLayoutParams();
+            if (lp == null) {
+                return;
+            }
+            if ((dirty & WIDTH) != 0) {
+                lp.width = width;
+            }
+            if ((dirty & HEIGHT) != 0) {
+                lp.height = height;
+            }
+            if ((dirty & MARGIN) != 0 && lp instanceof ViewGroup.MarginLayoutParams) {
+                ((ViewGroup.MarginLayoutParams) lp).setMargins(left, top, right, bottom);
+            }
+            view.setLayoutParams(lp);
+        }
+    }
+}
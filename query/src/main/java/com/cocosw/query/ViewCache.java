@@ -0,0 +1,57 @@
+package com.cocosw.query;
+
+import android.util.SparseArray;
+import android.view.View;
+import android.view.ViewParent;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Id to view lookup cache of one root view.
+ * <p/>
+ * Views are weak referenced, and a cached view is only returned while it still has the same id
+ * and is still attached under the root, so detached or replaced views fall back to findViewById.
+ */
+final class ViewCache {
+
+    private final SparseArray<WeakReference<View>> views = new SparseArray<WeakReference<View>>();
+
+    View get(int id, View root) {
+        WeakReference<View> ref = views.get(id);
+        if (ref == null) {
+            return null;
+        }
+        View view = ref.get();
+        if (view != null && view.getId() == id && isDescendant(view, root)) {
+            return view;
+        }
+        views.remove(id);
+        return null;
+    }
+
+    void put(int id, View view) {
+        WeakReference<View> ref = views.get(id);
+        if (ref != null && ref.get() == view) {
+            return;
+        }
+        views.put(id, new WeakReference<View>(view));
+    }
+
+    void clear() {
+        views.clear();
+    }
+
+    static boolean isDescendant(View view, View root) {
+        if (view == root) {
+            return true;
+        }
+        ViewParent parent = view.getParent();
+        while (parent instanceof View) {
+            if (parent == root) {
+                return true;
+            }
+            parent = parent.getParent();
+        }
+        return false;
+    }
+}
@@ -0,0 +1,145 @@
+package com.cocosw.query;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.View;
+import android.view.ViewGroup;
+import android.view.ViewTreeObserver;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class and tag index of a view tree, built by one traversal on first use.
+ * <p/>
+ * A layout of the tree, which follows any view added or removed, marks the index dirty and the next lookup
+ * rebuilds it, so it's built at most once per layout change. A tag set by {@link View#setTag(Object)} doesn't
+ * lay out the tree, it's seen after the next layout or {@link #invalidate()}.
+ */
+final class ViewIndex implements ViewTreeObserver.OnGlobalLayoutListener {
+
+    private static final View[] EMPTY = new View[0];
+
+    private final View root;
+    private final HashMap<Class<?>, ArrayList<View>> byClass = new HashMap<Class<?>, ArrayList<View>>();
+    private final HashMap<Object, ArrayList<View>> byTag = new HashMap<Object, ArrayList<View>>();
+    private final HashMap<Class<?>, View[]> classResults = new HashMap<Class<?>, View[]>();
+    private final HashMap<Object, View[]> tagResults = new HashMap<Object, View[]>();
+    private boolean dirty = true;
+
+    ViewIndex(View root) {
+        this.root = root;
+        root.getViewTreeObserver().addOnGlobalLayoutListener(this);
+    }
+
+    View[] find(Class<?> clz) {
+        build();
+        return lookup(clz);
+    }
+
+    View[] findByTag(Object tag) {
+        build();
+        return lookupTag(tag);
+    }
+
+    private View[] lookup(Class<?> clz) {
+        View[] result = classResults.get(clz);
+        if (result == null) {
+            ArrayList<View> matched = new ArrayList<View>();
+            for (Map.Entry<Class<?>, ArrayList<View>> entry : byClass.entrySet()) {
+                if (clz.isAssignableFrom(entry.getKey())) {
+                    matched.addAll(entry.getValue());
+                }
+            }
+            result = matched.isEmpty() ? EMPTY : matched.toArray(new View[matched.size()]);
+            classResults.put(clz, result);
+        }
+        return result;
+    }
+
+    private View[] lookupTag(Object tag) {
+        View[] result = tagResults.get(tag);
+        if (result == null) {
+            ArrayList<View> matched = byTag.get(tag);
+            result = matched == null ? EMPTY : matched.toArray(new View[matched.size()]);
+            tagResults.put(tag, result);
+        }
+        return result;
+    }
+
+    /**
+     * Rebuild on next lookup
+     */
+    void invalidate() {
+        dirty = true;
+    }
+
+    @Override
+    public void onGlobalLayout() {
+        dirty = true;
+    }
+
+    /**
+     * Stop listening to the tree, the index is no longer used
+     */
+    void release() {
+        ViewTreeObserver observer = root.getViewTreeObserver();
+        if (observer.isAlive()) {
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+                JellyBean.removeListener(observer, this);
+            } else {
+                removeListener(observer, this);
+            }
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    private static void removeListener(ViewTreeObserver observer, ViewTreeObserver.OnGlobalLayoutListener listener) {
+        observer.removeGlobalOnLayoutListener(listener);
+    }
+
+    private void build() {
+        if (!dirty) {
+            return;
+        }
+        byClass.clear();
+        byTag.clear();
+        classResults.clear();
+        tagResults.clear();
+        ArrayDeque<View> stack = new ArrayDeque<View>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            View view = stack.pop();
+            add(byClass, view.getClass(), view);
+            Object tag = view.getTag();
+            if (tag != null) {
+                add(byTag, tag, view);
+            }
+            if (view instanceof ViewGroup) {
+                ViewGroup group = (ViewGroup) view;
+                for (int i = group.getChildCount() - 1; i >= 0; i--) {
+                    stack.push(group.getChildAt(i));
+                }
+            }
+        }
+        dirty = false;
+    }
+
+    private static <K> void add(HashMap<K, ArrayList<View>> map, K key, View view) {
+        ArrayList<View> list = map.get(key);
+        if (list == null) {
+            list = new ArrayList<View>();
+            map.put(key, list);
+        }
+        list.add(view);
+    }
+
+    @TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+    private static class JellyBean {
+        static void removeListener(ViewTreeObserver observer, ViewTreeObserver.OnGlobalLayoutListener listener) {
+            observer.removeOnGlobalLayoutListener(listener);
+        }
+    }
+}
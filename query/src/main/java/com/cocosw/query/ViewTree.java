@@ -0,0 +1,51 @@
+package com.cocosw.query;
+
+import android.view.View;
+import android.view.ViewGroup;
+
+import java.util.ArrayDeque;
+
+/**
+ * View tree traversal helpers
+ */
+final class ViewTree {
+
+    private ViewTree() {
+    }
+
+    /**
+     * Find views of given ids in one pre-order traversal, the first matched view wins as findViewById does.
+     *
+     * @param root    root of the traversal
+     * @param ids     ids to find
+     * @param out     found views, slots which are not null will be kept
+     * @param missing how many slots of out are still null
+     */
+    static void find(View root, int[] ids, View[] out, int missing) {
+        if (missing == 0) {
+            return;
+        }
+        ArrayDeque<View> stack = new ArrayDeque<View>();
+        stack.push(root);
+        while (!stack.isEmpty()) {
+            View view = stack.pop();
+            int id = view.getId();
+            if (id != View.NO_ID) {
+                for (int i = 0; i < ids.length; i++) {
+                    if (out[i] == null && ids[i] == id) {
+                        out[i] = view;
+                        if (--missing == 0) {
+                            return;
+                        }
+                    }
+                }
+            }
+            if (view instanceof ViewGroup) {
+                ViewGroup group = (ViewGroup) view;
+                for (int i = group.getChildCount() - 1; i >= 0; i--) {
+                    stack.push(group.getChildAt(i));
+                }
+            }
+        }
+    }
+}
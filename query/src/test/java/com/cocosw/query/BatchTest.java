@@ -0,0 +1,123 @@
+package com.cocosw.query;
+
+import android.content.Context;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class BatchTest {
+
+    private static final int TEXT = 1;
+
+    private LinearLayout root;
+    private CountingText text;
+    private CocoQuery<AbstractViewQuery.DefaultQuery> q;
+
+    @Before
+    public void setUp() {
+        root = new LinearLayout(RuntimeEnvironment.application);
+        text = new CountingText(RuntimeEnvironment.application);
+        text.setId(TEXT);
+        root.addView(text, new LinearLayout.LayoutParams(10, 10));
+        text.layouts = 0;
+        text.texts = 0;
+        q = new CocoQuery<AbstractViewQuery.DefaultQuery>(root);
+    }
+
+    @Test
+    public void appliesOnCommitAndLastWriteWins() {
+        q.beginBatch();
+        q.id(TEXT).text("a").visibility(View.INVISIBLE);
+        q.id(TEXT).text("b");
+        assertEquals("", text.getText().toString());
+        assertEquals(View.VISIBLE, text.getVisibility());
+        q.commit();
+        assertEquals("b", text.getText().toString());
+        assertEquals(View.INVISIBLE, text.getVisibility());
+        assertEquals(1, text.texts);
+    }
+
+    @Test
+    public void setsLayoutParamsOnce() {
+        q.beginBatch();
+        q.id(TEXT).width(20, false).height(30, false).margin(1, 2, 3, 4);
+        q.commit();
+        ViewGroup.MarginLayoutParams lp = (ViewGroup.MarginLayoutParams) text.getLayoutParams();
+        assertEquals(20, lp.width);
+        assertEquals(30, lp.height);
+        assertEquals(1, text.layouts);
+    }
+
+    @Test
+    public void nestedBatchCommitsAtTheOuterEnd() {
+        q.beginBatch();
+        q.batch(new Runnable() {
+            @Override
+            public void run() {
+                q.id(TEXT).text("inner");
+            }
+        });
+        assertEquals("", text.getText().toString());
+        q.commit();
+        assertEquals("inner", text.getText().toString());
+    }
+
+    @Test
+    public void commitsOnNextFrame() {
+        ShadowLooper.pauseMainLooper();
+        q.beginBatch();
+        q.id(TEXT).text("frame");
+        q.commitOnNextFrame();
+        assertEquals("", text.getText().toString());
+        ShadowLooper.idleMainLooper(100);
+        assertEquals("frame", text.getText().toString());
+    }
+
+    @Test
+    public void writesAfterCommitAreImmediate() {
+        q.beginBatch();
+        AbstractViewQuery.DefaultQuery chain = q.id(TEXT);
+        q.commit();
+        chain.text("now");
+        assertEquals("now", text.getText().toString());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void commitNeedsBegin() {
+        q.commit();
+    }
+
+    private static final class CountingText extends TextView {
+        int texts;
+        int layouts;
+
+        CountingText(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void setLayoutParams(ViewGroup.LayoutParams params) {
+            layouts++;
+            super.setLayoutParams(params);
+        }
+
+        @Override
+        public void setText(CharSequence text, BufferType type) {
+            texts++;
+            super.setText(text, type);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.cocosw.query;
+
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class CursorModeTest {
+
+    private static final int FIRST = 1;
+    private static final int SECOND = 2;
+
+    private LinearLayout root;
+    private TextView first;
+    private TextView second;
+
+    @Before
+    public void setUp() {
+        root = new LinearLayout(RuntimeEnvironment.application);
+        first = new TextView(RuntimeEnvironment.application);
+        first.setId(FIRST);
+        second = new TextView(RuntimeEnvironment.application);
+        second.setId(SECOND);
+        root.addView(first);
+        root.addView(second);
+    }
+
+    @After
+    public void tearDown() {
+        CocoQuery.setDebug(false);
+    }
+
+    @Test
+    public void reusesOneQuery() {
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = new CocoQuery<AbstractViewQuery.DefaultQuery>(root).cursor(true);
+        AbstractViewQuery.DefaultQuery a = q.id(FIRST).text("a");
+        AbstractViewQuery.DefaultQuery b = q.id(SECOND).text("b");
+        assertSame(a, b);
+        assertEquals("a", first.getText().toString());
+        assertEquals("b", second.getText().toString());
+    }
+
+    @Test
+    public void newQueryWithoutCursor() {
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = new CocoQuery<AbstractViewQuery.DefaultQuery>(root);
+        assertNotSame(q.id(FIRST), q.id(SECOND));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void retiredQueryThrowsInDebug() {
+        CocoQuery.setDebug(true);
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = new CocoQuery<AbstractViewQuery.DefaultQuery>(root).cursor(true);
+        AbstractViewQuery.DefaultQuery a = q.id(FIRST);
+        q.id(SECOND);
+        a.text("late");
+    }
+}
@@ -0,0 +1,116 @@
+package com.cocosw.query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ElasticPoolTest {
+
+    private final CountDownLatch release = new CountDownLatch(1);
+    private TaskExecutor executor;
+
+    @Before
+    public void setUp() {
+        executor = TaskExecutor.elastic("test", 1, 3, 10, TimeUnit.SECONDS);
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void growsBeforeQueueing() throws Exception {
+        assertTrue(executor.isElastic());
+        CountDownLatch started = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            executor.execute(new Blocking(started));
+        }
+        // core is 1, a plain pool would queue the other two behind the first
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(3, executor.getPoolSize());
+        assertEquals(0, executor.getQueueDepth());
+    }
+
+    @Test
+    public void queuesAtTheCap() throws Exception {
+        CountDownLatch started = new CountDownLatch(3);
+        for (int i = 0; i < 3; i++) {
+            executor.execute(new Blocking(started));
+        }
+        CountDownLatch late = new CountDownLatch(1);
+        executor.execute(new Blocking(late));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertEquals(3, executor.getPoolSize());
+        assertEquals(1, executor.getQueueDepth());
+        assertEquals(0, executor.getRejectedCount());
+        release.countDown();
+        assertTrue(late.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void idleThreadIsReused() throws Exception {
+        CountDownLatch first = new CountDownLatch(1);
+        executor.execute(new Quick(first));
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        awaitCompleted(1);
+        // the thread is back in the queue, waiting for work
+        Thread.sleep(50);
+        CountDownLatch second = new CountDownLatch(1);
+        executor.execute(new Quick(second));
+        assertTrue(second.await(5, TimeUnit.SECONDS));
+        assertEquals(1, executor.getPoolSize());
+    }
+
+    @Test
+    public void ioPoolIsElastic() {
+        assertTrue(TaskExecutor.IO.isElastic());
+        assertFalse(TaskExecutor.CPU.isElastic());
+    }
+
+    private void awaitCompleted(long count) throws InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (executor.getCompletedTaskCount() < count && System.nanoTime() - end < 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    private final class Blocking implements Runnable {
+        private final CountDownLatch started;
+
+        Blocking(CountDownLatch started) {
+            this.started = started;
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private static final class Quick implements Runnable {
+        private final CountDownLatch done;
+
+        Quick(CountDownLatch done) {
+            this.done = done;
+        }
+
+        @Override
+        public void run() {
+            done.countDown();
+        }
+    }
+}
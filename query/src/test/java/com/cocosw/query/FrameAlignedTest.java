@@ -0,0 +1,126 @@
+package com.cocosw.query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+import org.robolectric.util.Scheduler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class FrameAlignedTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private final List<Integer> delivered = new ArrayList<Integer>();
+
+    @Before
+    public void setUp() {
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @After
+    public void tearDown() {
+        ShadowLooper.unPauseMainLooper();
+    }
+
+    @Test
+    public void resultsWaitForTheFrame() {
+        start(1, 0);
+        start(2, 0);
+        assertTrue(delivered.isEmpty());
+        ShadowLooper.idleMainLooper(100);
+        assertEquals(Arrays.asList(1, 2), delivered);
+    }
+
+    @Test
+    public void fastResultsShareOneFrame() {
+        start(1, 0);
+        start(2, 0);
+        start(3, 0);
+        assertEquals(3, runUntilDelivered(1));
+    }
+
+    @Test
+    public void slowCallbacksSpillToNextFrames() {
+        // each callback is longer than the budget of a frame
+        start(1, 10);
+        start(2, 10);
+        start(3, 10);
+        assertEquals(1, runUntilDelivered(1));
+        assertEquals(2, runUntilDelivered(2));
+        assertEquals(3, runUntilDelivered(3));
+        assertEquals(Arrays.asList(1, 2, 3), delivered);
+    }
+
+    @Test
+    public void plainResultIsOneMessage() {
+        new Value(1, 0).executor(DIRECT).async(RuntimeEnvironment.application);
+        Robolectric.getForegroundThreadScheduler().runOneTask();
+        assertEquals(Arrays.asList(1), delivered);
+    }
+
+    /**
+     * Run the main looper one task at a time until something more is delivered
+     *
+     * @return count of delivered results
+     */
+    private int runUntilDelivered(int atLeast) {
+        Scheduler scheduler = Robolectric.getForegroundThreadScheduler();
+        while (delivered.size() < atLeast && scheduler.runOneTask()) {
+            // next task
+        }
+        return delivered.size();
+    }
+
+    private Value start(int value, long callbackMillis) {
+        Value task = new Value(value, callbackMillis);
+        task.executor(DIRECT).frameAligned(true).async(RuntimeEnvironment.application);
+        return task;
+    }
+
+    private final class Value extends CocoTask<Integer> {
+        private final int value;
+        private final long callbackMillis;
+
+        Value(int value, long callbackMillis) {
+            this.value = value;
+            this.callbackMillis = callbackMillis;
+        }
+
+        @Override
+        public Integer backgroundWork() {
+            return value;
+        }
+
+        @Override
+        public void callback(Integer result) {
+            delivered.add(result);
+            if (callbackMillis > 0) {
+                try {
+                    Thread.sleep(callbackMillis);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        }
+    }
+}
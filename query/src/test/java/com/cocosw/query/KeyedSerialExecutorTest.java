@@ -0,0 +1,224 @@
+package com.cocosw.query;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class KeyedSerialExecutorTest {
+
+    @Test
+    public void runsInSubmissionOrderPerKey() throws InterruptedException {
+        final int keys = 4;
+        final int perKey = 2000;
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        final CountDownLatch done = new CountDownLatch(keys * perKey);
+        final AtomicInteger overlaps = new AtomicInteger();
+        final List<List<Integer>> runs = new ArrayList<List<Integer>>();
+        final List<Executor> executors = new ArrayList<Executor>();
+        for (int k = 0; k < keys; k++) {
+            runs.add(new ArrayList<Integer>());
+            executors.add(KeyedSerialExecutor.on(new Object(), pool));
+        }
+        for (int i = 0; i < perKey; i++) {
+            for (int k = 0; k < keys; k++) {
+                final List<Integer> run = runs.get(k);
+                final AtomicBoolean running = new AtomicBoolean();
+                final int index = i;
+                executors.get(k).execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (!running.compareAndSet(false, true)) {
+                            overlaps.incrementAndGet();
+                        }
+                        synchronized (run) {
+                            run.add(index);
+                        }
+                        running.set(false);
+                        done.countDown();
+                    }
+                });
+            }
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertEquals(0, overlaps.get());
+        for (List<Integer> run : runs) {
+            synchronized (run) {
+                assertEquals(perKey, run.size());
+                for (int i = 0; i < perKey; i++) {
+                    assertEquals(i, (int) run.get(i));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void oneAtATimePerKey() throws InterruptedException {
+        final ExecutorService pool = Executors.newFixedThreadPool(4);
+        final Executor serial = KeyedSerialExecutor.on(new Object(), pool);
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger overlaps = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(200);
+        for (int i = 0; i < 200; i++) {
+            serial.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (running.incrementAndGet() > 1) {
+                        overlaps.incrementAndGet();
+                    }
+                    Thread.yield();
+                    running.decrementAndGet();
+                    done.countDown();
+                }
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertEquals(0, overlaps.get());
+    }
+
+    @Test
+    public void rejectedEntriesAreDroppedAndTheKeyKeepsWorking() throws InterruptedException {
+        final Object key = new Object();
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        final AtomicBoolean reject = new AtomicBoolean();
+        final Executor executor = new Executor() {
+            @Override
+            public void execute(Runnable r) {
+                if (reject.get()) {
+                    throw new RejectedExecutionException();
+                }
+                pool.execute(r);
+            }
+        };
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CountDownLatch first = new CountDownLatch(1);
+        KeyedSerialExecutor.execute(key, executor, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                reject.set(true);
+                first.countDown();
+            }
+        });
+        // queued behind the head, all rejected in one go when it finishes, deep enough to overflow a recursion
+        final int count = 100000;
+        final AtomicInteger ran = new AtomicInteger();
+        final CountDownLatch dropped = new CountDownLatch(count);
+        for (int i = 0; i < count; i++) {
+            KeyedSerialExecutor.execute(key, executor, new FutureTask<Void>(new Runnable() {
+                @Override
+                public void run() {
+                    ran.incrementAndGet();
+                }
+            }, null) {
+                @Override
+                protected void done() {
+                    if (isCancelled()) {
+                        dropped.countDown();
+                    }
+                }
+            });
+        }
+        gate.countDown();
+        assertTrue(first.await(5, TimeUnit.SECONDS));
+        assertTrue(dropped.await(10, TimeUnit.SECONDS));
+        assertEquals(0, ran.get());
+
+        reject.set(false);
+        final CountDownLatch after = new CountDownLatch(1);
+        KeyedSerialExecutor.execute(key, executor, new Runnable() {
+            @Override
+            public void run() {
+                after.countDown();
+            }
+        });
+        assertTrue(after.await(5, TimeUnit.SECONDS));
+        pool.shutdown();
+    }
+
+    @Test
+    public void droppedQueueDoesNotTakeTheFreedSlot() throws InterruptedException {
+        final TaskExecutor executor = new TaskExecutor("drop", 1, 1, 1, TimeUnit.SECONDS,
+                new PriorityTaskQueue(1, 1, TimeUnit.HOURS));
+        executor.setSaturationPolicy(TaskExecutor.Saturation.DROP_OLDEST_PREFETCH);
+        final CountDownLatch gate = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        // the only queue slot holds the serial queue, its head is a prefetch
+        final Object key = new Object();
+        final Work prefetch = new Work(CocoTask.Priority.PREFETCH);
+        final Work normal = new Work(CocoTask.Priority.NORMAL);
+        KeyedSerialExecutor.execute(key, executor, prefetch);
+        KeyedSerialExecutor.execute(key, executor, normal);
+
+        // pushes the serial queue out, and must keep the slot
+        final CountDownLatch ran = new CountDownLatch(1);
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        });
+        assertTrue(prefetch.rejected);
+        gate.countDown();
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        // the next entry went through the policy, with no prefetch left to drop it's rejected
+        assertTrue(normal.rejected);
+        assertEquals(1, executor.getRejectedCount());
+        executor.shutdown();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullKeyIsRefused() {
+        KeyedSerialExecutor.on(null, Executors.newSingleThreadExecutor());
+    }
+
+    private static final class Work implements Runnable, PriorityTaskQueue.Prioritized {
+        private final CocoTask.Priority priority;
+        volatile boolean rejected;
+
+        Work(CocoTask.Priority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        public CocoTask.Priority priority() {
+            return priority;
+        }
+
+        @Override
+        public void reject(RejectedExecutionException e) {
+            rejected = true;
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.cocosw.query;
+
+import org.junit.Test;
+
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class PriorityTaskQueueTest {
+
+    @Test
+    public void takesHigherPriorityFirst() {
+        PriorityTaskQueue queue = new PriorityTaskQueue(10, 1, TimeUnit.HOURS);
+        Runnable prefetch = new Work(CocoTask.Priority.PREFETCH);
+        Runnable normal = new Work(CocoTask.Priority.NORMAL);
+        Runnable immediate = new Work(CocoTask.Priority.IMMEDIATE);
+        assertTrue(queue.offer(prefetch));
+        assertTrue(queue.offer(normal));
+        assertTrue(queue.offer(immediate));
+        assertEquals(3, queue.size());
+        assertSame(immediate, queue.poll());
+        assertSame(normal, queue.poll());
+        assertSame(prefetch, queue.poll());
+        assertNull(queue.poll());
+    }
+
+    @Test
+    public void keepsOrderInALane() {
+        PriorityTaskQueue queue = new PriorityTaskQueue(10, 1, TimeUnit.HOURS);
+        Runnable first = new Work(CocoTask.Priority.NORMAL);
+        // not prioritized, queued as NORMAL
+        Runnable second = new Runnable() {
+            @Override
+            public void run() {
+            }
+        };
+        Runnable third = new Work(null);
+        queue.offer(first);
+        queue.offer(second);
+        queue.offer(third);
+        assertEquals(3, queue.size(CocoTask.Priority.NORMAL));
+        assertSame(first, queue.poll());
+        assertSame(second, queue.poll());
+        assertSame(third, queue.poll());
+    }
+
+    @Test
+    public void agesStarvedHead() throws InterruptedException {
+        PriorityTaskQueue queue = new PriorityTaskQueue(10, 20, TimeUnit.MILLISECONDS);
+        Runnable prefetch = new Work(CocoTask.Priority.PREFETCH);
+        Runnable normal = new Work(CocoTask.Priority.NORMAL);
+        queue.offer(prefetch);
+        Thread.sleep(50);
+        queue.offer(normal);
+        Runnable immediate = new Work(CocoTask.Priority.IMMEDIATE);
+        queue.offer(immediate);
+        // the PREFETCH head has waited past the limit, it goes before the higher lanes
+        assertSame(prefetch, queue.poll());
+        assertSame(immediate, queue.poll());
+        assertSame(normal, queue.poll());
+    }
+
+    @Test
+    public void oldestStarvedHeadFirst() throws InterruptedException {
+        PriorityTaskQueue queue = new PriorityTaskQueue(10, 20, TimeUnit.MILLISECONDS);
+        Runnable prefetch = new Work(CocoTask.Priority.PREFETCH);
+        Runnable normal = new Work(CocoTask.Priority.NORMAL);
+        queue.offer(prefetch);
+        Thread.sleep(5);
+        queue.offer(normal);
+        Thread.sleep(50);
+        Runnable immediate = new Work(CocoTask.Priority.IMMEDIATE);
+        queue.offer(immediate);
+        assertSame(prefetch, queue.poll());
+        assertSame(normal, queue.poll());
+        assertSame(immediate, queue.poll());
+    }
+
+    @Test
+    public void refusesWhenFull() {
+        PriorityTaskQueue queue = new PriorityTaskQueue(2, 1, TimeUnit.HOURS);
+        assertTrue(queue.offer(new Work(CocoTask.Priority.NORMAL)));
+        assertTrue(queue.offer(new Work(CocoTask.Priority.PREFETCH)));
+        assertFalse(queue.offer(new Work(CocoTask.Priority.IMMEDIATE)));
+        assertEquals(0, queue.remainingCapacity());
+    }
+
+    @Test
+    public void countsWaitPerPriority() {
+        PriorityTaskQueue queue = new PriorityTaskQueue(10, 1, TimeUnit.HOURS);
+        queue.offer(new Work(CocoTask.Priority.IMMEDIATE));
+        queue.offer(new Work(CocoTask.Priority.PREFETCH));
+        queue.offer(new Work(CocoTask.Priority.PREFETCH));
+        while (queue.poll() != null) {
+            // drain
+        }
+        assertEquals(1, queue.getWaitCount(CocoTask.Priority.IMMEDIATE));
+        assertEquals(0, queue.getWaitCount(CocoTask.Priority.NORMAL));
+        assertEquals(2, queue.getWaitCount(CocoTask.Priority.PREFETCH));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void capacityMustBePositive() {
+        new PriorityTaskQueue(0, 1, TimeUnit.HOURS);
+    }
+
+    private static final class Work implements Runnable, PriorityTaskQueue.Prioritized {
+        private final CocoTask.Priority priority;
+
+        Work(CocoTask.Priority priority) {
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+        }
+
+        @Override
+        public CocoTask.Priority priority() {
+            return priority;
+        }
+
+        @Override
+        public void reject(RejectedExecutionException e) {
+        }
+    }
+}
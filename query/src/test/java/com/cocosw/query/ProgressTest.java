@@ -0,0 +1,157 @@
+package com.cocosw.query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ProgressTest {
+
+    private ExecutorService pool;
+
+    @Before
+    public void setUp() {
+        pool = Executors.newSingleThreadExecutor();
+        // updates wait on the main looper until the test idles it
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+        ShadowLooper.unPauseMainLooper();
+    }
+
+    @Test
+    public void updatesAreCoalesced() throws Exception {
+        Loader task = new Loader() {
+            @Override
+            void publish() {
+                for (int i = 1; i <= 1000; i++) {
+                    publishProgress(i, 1000, "item" + i);
+                }
+            }
+        };
+        task.executor(pool).async(RuntimeEnvironment.application);
+        task.published.await(5, TimeUnit.SECONDS);
+        idleUntil(task, 1);
+        task.finish.countDown();
+        idleUntilDone(task);
+        assertEquals(1, task.updates.size());
+        assertEquals("1000/1000 item1000 100", task.updates.get(0));
+    }
+
+    @Test
+    public void fractionIsNotACount() throws Exception {
+        Loader task = new Loader() {
+            @Override
+            void publish() {
+                publishFraction(0.25f);
+            }
+        };
+        task.executor(pool).async(RuntimeEnvironment.application);
+        task.published.await(5, TimeUnit.SECONDS);
+        idleUntil(task, 1);
+        task.finish.countDown();
+        idleUntilDone(task);
+        assertEquals("-1/-1 null 25", task.updates.get(0));
+    }
+
+    @Test
+    public void percentIsOutOfHundred() throws Exception {
+        Loader task = new Loader() {
+            @Override
+            void publish() {
+                publishProgress(40);
+            }
+        };
+        task.executor(pool).async(RuntimeEnvironment.application);
+        task.published.await(5, TimeUnit.SECONDS);
+        idleUntil(task, 1);
+        task.finish.countDown();
+        idleUntilDone(task);
+        assertEquals("40/100 null 40", task.updates.get(0));
+    }
+
+    @Test
+    public void pendingUpdateIsDroppedOnCancel() throws Exception {
+        Loader task = new Loader() {
+            @Override
+            void publish() {
+                publishProgress(1, 2);
+            }
+        };
+        task.executor(pool).async(RuntimeEnvironment.application);
+        task.published.await(5, TimeUnit.SECONDS);
+        task.cancel();
+        ShadowLooper.idleMainLooper(100);
+        assertTrue(task.updates.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void intervalCantBeNegative() {
+        new Loader().progressInterval(-1, TimeUnit.MILLISECONDS);
+    }
+
+    private static void idleUntil(Loader task, int updates) throws InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (task.updates.size() < updates && System.nanoTime() - end < 0) {
+            ShadowLooper.idleMainLooper(20);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void idleUntilDone(Loader task) throws InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!task.done && System.nanoTime() - end < 0) {
+            ShadowLooper.idleMainLooper();
+            Thread.sleep(10);
+        }
+        assertTrue("task not done", task.done);
+    }
+
+    private static class Loader extends CocoTask<Void> {
+        final CountDownLatch published = new CountDownLatch(1);
+        final CountDownLatch finish = new CountDownLatch(1);
+        final List<String> updates = new ArrayList<String>();
+        boolean done;
+
+        void publish() {
+        }
+
+        @Override
+        public Void backgroundWork() throws Exception {
+            publish();
+            published.countDown();
+            finish.await(5, TimeUnit.SECONDS);
+            return null;
+        }
+
+        @Override
+        protected void onProgress(TaskProgress progress) {
+            updates.add(progress.getCurrent() + "/" + progress.getTotal() + " " + progress.getPayload()
+                    + " " + progress.getPercent());
+        }
+
+        @Override
+        public void callback(Void result) {
+            done = true;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.cocosw.query;
+
+import android.view.View;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class QueryFactoryTest {
+
+    private static final int TEXT = 1;
+
+    private LinearLayout root;
+    private TextView text;
+
+    @Before
+    public void setUp() {
+        root = new LinearLayout(RuntimeEnvironment.application);
+        text = new TextView(RuntimeEnvironment.application);
+        text.setId(TEXT);
+        root.addView(text);
+    }
+
+    @After
+    public void tearDown() {
+        CocoQuery.setQueryFactory(QueryFactory.DEFAULT);
+    }
+
+    @Test
+    public void defaultFactoryCreatesDefaultQuery() {
+        Object query = new CocoQuery<AbstractViewQuery.DefaultQuery>(root).id(TEXT);
+        assertTrue(query instanceof AbstractViewQuery.DefaultQuery);
+        assertSame(text, ((AbstractViewQuery.DefaultQuery) query).getView());
+    }
+
+    @Test
+    public void registeredFactoryIsUsed() {
+        final int[] created = new int[1];
+        CocoQuery.setQueryFactory(new QueryFactory<MyQuery>() {
+            @Override
+            public MyQuery create(View view) {
+                created[0]++;
+                return new MyQuery(view);
+            }
+        });
+        MyQuery query = new CocoQuery<MyQuery>(root).id(TEXT);
+        assertEquals(1, created[0]);
+        assertSame(text, query.getView());
+    }
+
+    @Test
+    public void queryClassFallsBackToReflection() {
+        CocoQuery.setQueryClass(MyQuery.class);
+        Object query = new CocoQuery<MyQuery>(root).id(TEXT).text("a");
+        assertTrue(query instanceof MyQuery);
+        assertEquals("a", text.getText().toString());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void queryClassNeedsViewConstructor() {
+        new QueryFactory.ReflectiveFactory<NoViewConstructor>(NoViewConstructor.class);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void nullFactoryIsRefused() {
+        CocoQuery.setQueryFactory(null);
+    }
+
+    public static class MyQuery extends AbstractViewQuery<MyQuery> {
+        public MyQuery(View view) {
+            super(view);
+        }
+    }
+
+    public static class NoViewConstructor extends AbstractViewQuery<NoViewConstructor> {
+        public NoViewConstructor() {
+            super(null);
+        }
+    }
+}
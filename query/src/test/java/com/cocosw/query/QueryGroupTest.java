@@ -0,0 +1,88 @@
+package com.cocosw.query;
+
+import android.content.Context;
+import android.view.View;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class QueryGroupTest {
+
+    private static final int FIRST = 1;
+    private static final int SECOND = 2;
+    private static final int NESTED = 3;
+    private static final int MISSING = 4;
+
+    private TextView first;
+    private TextView second;
+    private TextView nested;
+    private CocoQuery<AbstractViewQuery.DefaultQuery> q;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.application;
+        LinearLayout root = new LinearLayout(context);
+        first = new TextView(context);
+        first.setId(FIRST);
+        root.addView(first);
+        second = new TextView(context);
+        second.setId(SECOND);
+        root.addView(second);
+        FrameLayout frame = new FrameLayout(context);
+        nested = new TextView(context);
+        nested.setId(NESTED);
+        frame.addView(nested);
+        root.addView(frame);
+        q = new CocoQuery<AbstractViewQuery.DefaultQuery>(root);
+    }
+
+    @Test
+    public void missingIdsAreIgnored() {
+        QueryGroup<AbstractViewQuery.DefaultQuery> group = q.ids(MISSING, FIRST, NESTED);
+        assertEquals(2, group.size());
+        assertSame(first, group.getView(0));
+        assertSame(nested, group.getView(1));
+    }
+
+    @Test
+    public void settersApplyToEveryView() {
+        q.ids(FIRST, SECOND, NESTED).text("a").gone().enabled(false).tag("t");
+        for (TextView view : new TextView[]{first, second, nested}) {
+            assertEquals("a", view.getText().toString());
+            assertEquals(View.GONE, view.getVisibility());
+            assertFalse(view.isEnabled());
+            assertEquals("t", view.getTag());
+        }
+    }
+
+    @Test
+    public void eachVisitsEveryView() {
+        final int[] count = new int[1];
+        q.ids(FIRST, SECOND).each(new QueryGroup.Each<AbstractViewQuery.DefaultQuery>() {
+            @Override
+            public void run(AbstractViewQuery.DefaultQuery query) {
+                query.text(String.valueOf(++count[0]));
+            }
+        });
+        assertEquals("1", first.getText().toString());
+        assertEquals("2", second.getText().toString());
+    }
+
+    @Test
+    public void emptyGroupIsNoOp() {
+        assertEquals(0, q.ids(MISSING).text("a").size());
+    }
+}
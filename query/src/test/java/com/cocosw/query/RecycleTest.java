@@ -0,0 +1,58 @@
+package com.cocosw.query;
+
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class RecycleTest {
+
+    private static final int TEXT = 1;
+
+    private static LinearLayout row() {
+        LinearLayout row = new LinearLayout(RuntimeEnvironment.application);
+        TextView text = new TextView(RuntimeEnvironment.application);
+        text.setId(TEXT);
+        row.addView(text);
+        return row;
+    }
+
+    @Test
+    public void bindsTheRecycledRow() {
+        LinearLayout first = row();
+        LinearLayout second = row();
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = new CocoQuery<AbstractViewQuery.DefaultQuery>(first);
+        q.recycle(first).id(TEXT).text("first");
+        q.recycle(second).id(TEXT).text("second");
+        assertEquals("first", ((TextView) first.getChildAt(0)).getText().toString());
+        assertEquals("second", ((TextView) second.getChildAt(0)).getText().toString());
+    }
+
+    @Test
+    public void lookupIsKeptWithTheRow() {
+        LinearLayout first = row();
+        LinearLayout second = row();
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = new CocoQuery<AbstractViewQuery.DefaultQuery>(first);
+        q.recycle(first).id(TEXT);
+        q.recycle(second).id(TEXT);
+        assertEquals(2, q.getCacheMisses());
+        // binding the rows again finds both views in their own cache
+        assertSame(first.getChildAt(0), q.recycle(first).id(TEXT).getView());
+        assertSame(second.getChildAt(0), q.recycle(second).id(TEXT).getView());
+        assertEquals(2, q.getCacheHits());
+
+        // another query sees the cache kept with the row
+        CocoQuery<AbstractViewQuery.DefaultQuery> other = new CocoQuery<AbstractViewQuery.DefaultQuery>(first);
+        other.recycle(second).id(TEXT);
+        assertEquals(1, other.getCacheHits());
+    }
+}
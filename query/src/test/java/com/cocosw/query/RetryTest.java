@@ -0,0 +1,212 @@
+package com.cocosw.query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import java.io.IOException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class RetryTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Before
+    public void setUp() {
+        // the timer posts from its own thread, the main looper only runs them when the test idles it
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @After
+    public void tearDown() {
+        ShadowLooper.unPauseMainLooper();
+    }
+
+    @Test
+    public void policyLimitsAttempts() {
+        RetryPolicy policy = new RetryPolicy(3);
+        IOException e = new IOException();
+        assertTrue(policy.shouldRetry(1, e));
+        assertTrue(policy.shouldRetry(2, e));
+        assertFalse(policy.shouldRetry(3, e));
+    }
+
+    @Test
+    public void policyRetriesOnCause() {
+        RetryPolicy policy = new RetryPolicy(3).retryOn(IOException.class);
+        assertTrue(policy.shouldRetry(1, new RuntimeException(new IOException())));
+        assertFalse(policy.shouldRetry(1, new IllegalStateException()));
+    }
+
+    @Test
+    public void backoffGrowsUpToMax() {
+        RetryPolicy policy = new RetryPolicy(10).backoff(100, 1000, TimeUnit.MILLISECONDS).jitter(0);
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(100), policy.delayNanos(1));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(200), policy.delayNanos(2));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(800), policy.delayNanos(4));
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(1000), policy.delayNanos(5));
+    }
+
+    @Test
+    public void jitterShortensTheWait() {
+        RetryPolicy policy = new RetryPolicy(10).backoff(100, 1000, TimeUnit.MILLISECONDS).jitter(0.5);
+        for (int i = 0; i < 100; i++) {
+            long delay = policy.delayNanos(1);
+            assertTrue(delay >= TimeUnit.MILLISECONDS.toNanos(50) && delay <= TimeUnit.MILLISECONDS.toNanos(100));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void needsOneAttempt() {
+        new RetryPolicy(0);
+    }
+
+    @Test
+    public void retriesUntilSuccess() {
+        Flaky task = new Flaky(2);
+        task.retry(new RetryPolicy(3).backoff(1, 1, TimeUnit.MILLISECONDS)).executor(DIRECT)
+                .async(RuntimeEnvironment.application);
+        awaitDone(task);
+        assertEquals(3, task.works);
+        assertEquals("done", task.result);
+        assertNull(task.error);
+    }
+
+    @Test
+    public void lastFailureIsDelivered() {
+        Flaky task = new Flaky(5);
+        task.retry(new RetryPolicy(3).backoff(1, 1, TimeUnit.MILLISECONDS)).executor(DIRECT)
+                .async(RuntimeEnvironment.application);
+        awaitDone(task);
+        assertEquals(3, task.works);
+        assertTrue(task.error instanceof IOException);
+    }
+
+    @Test
+    public void unmatchedFailureIsNotRetried() {
+        Flaky task = new Flaky(5);
+        task.retry(new RetryPolicy(3).backoff(1, 1, TimeUnit.MILLISECONDS).retryOn(IllegalStateException.class))
+                .executor(DIRECT).async(RuntimeEnvironment.application);
+        awaitDone(task);
+        assertEquals(1, task.works);
+    }
+
+    @Test
+    public void timesOutWhenBackoffIsPastTheLimit() {
+        Flaky task = new Flaky(5);
+        task.retry(new RetryPolicy(3).backoff(10, 10, TimeUnit.SECONDS).jitter(0))
+                .timeout(1, TimeUnit.SECONDS).executor(DIRECT).async(RuntimeEnvironment.application);
+        awaitDone(task);
+        assertEquals(1, task.works);
+        assertTrue(task.error instanceof TaskTimeoutException);
+        assertSame(task.failure, task.error.getCause());
+    }
+
+    @Test
+    public void timesOutWhileWaitingToRetry() throws Exception {
+        Flaky task = new Flaky(5);
+        task.retry(new RetryPolicy(3).backoff(50, 50, TimeUnit.MILLISECONDS).jitter(0))
+                .timeout(200, TimeUnit.MILLISECONDS).executor(DIRECT).async(RuntimeEnvironment.application);
+        // first attempt fails and waits for the retry
+        ShadowLooper.idleMainLooper();
+        assertEquals(1, task.works);
+        // the retry is posted but the main thread is busy until the limit has passed
+        Thread.sleep(400);
+        awaitDone(task);
+        assertEquals(1, task.works);
+        assertTrue(task.error instanceof TaskTimeoutException);
+        assertSame(task.failure, task.error.getCause());
+    }
+
+    @Test
+    public void timeoutAbortsRunningAttempt() {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        final boolean[] interrupted = new boolean[1];
+        Flaky task = new Flaky(0) {
+            @Override
+            public String backgroundWork() throws Exception {
+                try {
+                    Thread.sleep(5000);
+                } catch (InterruptedException e) {
+                    interrupted[0] = true;
+                    throw e;
+                }
+                return "late";
+            }
+        };
+        task.retry(new RetryPolicy(3).backoff(1, 1, TimeUnit.MILLISECONDS))
+                .timeout(100, TimeUnit.MILLISECONDS).executor(pool).async(RuntimeEnvironment.application);
+        awaitDone(task);
+        pool.shutdown();
+        assertTrue(task.error instanceof TaskTimeoutException);
+        assertNull(task.result);
+        assertTrue(interrupted[0]);
+    }
+
+    private static void awaitDone(Flaky task) {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!task.done && System.nanoTime() - end < 0) {
+            ShadowLooper.idleMainLooper();
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                throw new AssertionError(e);
+            }
+        }
+        assertTrue("task not done", task.done);
+    }
+
+    private static class Flaky extends CocoTask<String> {
+        private final int failures;
+        volatile int works;
+        final IOException failure = new IOException("flaky");
+        String result;
+        Exception error;
+        boolean done;
+
+        Flaky(int failures) {
+            this.failures = failures;
+        }
+
+        @Override
+        public String backgroundWork() throws Exception {
+            if (++works <= failures) {
+                throw failure;
+            }
+            return "done";
+        }
+
+        @Override
+        public void callback(String result) {
+            this.result = result;
+            done = true;
+        }
+
+        @Override
+        public void failcallback(String result, Exception e) {
+            error = e;
+            done = true;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.cocosw.query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SharedWorkTest {
+
+    private static final String KEY = "key";
+
+    private Deferred executor;
+    private int works;
+
+    @Before
+    public void setUp() {
+        executor = new Deferred();
+    }
+
+    @After
+    public void tearDown() {
+        // no shared work is left behind for the next test
+        executor.runAll();
+    }
+
+    @Test
+    public void workRunsOnceForAllTasks() {
+        Shared a = start();
+        Shared b = start();
+        assertEquals(1, executor.size());
+        executor.runAll();
+        assertEquals(1, works);
+        assertEquals("done", a.result);
+        assertEquals("done", b.result);
+    }
+
+    @Test
+    public void differentKeysDontShare() {
+        start();
+        new Shared().key("other").executor(executor).async(RuntimeEnvironment.application);
+        assertEquals(2, executor.size());
+    }
+
+    @Test
+    public void cancelledFollowerKeepsTheWork() {
+        Shared a = start();
+        Shared b = start();
+        b.cancel();
+        executor.runAll();
+        assertEquals(1, works);
+        assertEquals("done", a.result);
+        assertNull(b.result);
+    }
+
+    @Test
+    public void cancelledLeaderKeepsTheWork() {
+        Shared a = start();
+        Shared b = start();
+        a.cancel();
+        executor.runAll();
+        assertEquals(1, works);
+        assertNull(a.result);
+        assertEquals("done", b.result);
+    }
+
+    @Test
+    public void workIsCancelledWithTheLastTask() {
+        Shared a = start();
+        Shared b = start();
+        a.cancel();
+        b.cancel();
+        executor.runAll();
+        assertEquals(0, works);
+        assertNull(a.result);
+        assertNull(b.result);
+        // the key is free again
+        start();
+        assertEquals(1, executor.size());
+    }
+
+    @Test
+    public void finishedWorkIsNotShared() {
+        start();
+        executor.runAll();
+        Shared b = start();
+        executor.runAll();
+        assertEquals(2, works);
+        assertEquals("done", b.result);
+    }
+
+    private Shared start() {
+        Shared task = new Shared();
+        task.key(KEY).executor(executor).async(RuntimeEnvironment.application);
+        return task;
+    }
+
+    private final class Shared extends CocoTask<String> {
+        String result;
+
+        @Override
+        public String backgroundWork() {
+            works++;
+            return "done";
+        }
+
+        @Override
+        public void callback(String result) {
+            this.result = result;
+        }
+    }
+
+    /**
+     * Holds the work until the test runs it, on main thread
+     */
+    private static final class Deferred implements Executor {
+        private final ArrayList<Runnable> queued = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            queued.add(command);
+        }
+
+        int size() {
+            return queued.size();
+        }
+
+        void runAll() {
+            ArrayList<Runnable> run = new ArrayList<Runnable>(queued);
+            queued.clear();
+            for (Runnable r : run) {
+                r.run();
+            }
+        }
+    }
+}
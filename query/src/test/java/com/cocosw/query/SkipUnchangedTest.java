@@ -0,0 +1,114 @@
+package com.cocosw.query;
+
+import android.content.Context;
+import android.graphics.Color;
+import android.text.SpannableString;
+import android.view.View;
+import android.widget.CheckBox;
+import android.widget.ImageView;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class SkipUnchangedTest {
+
+    private static final int TEXT = 1;
+    private static final int CHECK = 2;
+    private static final int IMAGE = 3;
+
+    private CountingText text;
+    private ImageView image;
+    private CocoQuery<AbstractViewQuery.DefaultQuery> q;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.application;
+        LinearLayout root = new LinearLayout(context);
+        text = new CountingText(context);
+        text.setId(TEXT);
+        root.addView(text);
+        CheckBox check = new CheckBox(context);
+        check.setId(CHECK);
+        root.addView(check);
+        image = new ImageView(context);
+        image.setId(IMAGE);
+        root.addView(image);
+        text.texts = 0;
+        q = new CocoQuery<AbstractViewQuery.DefaultQuery>(root).skipUnchanged(true);
+    }
+
+    @Test
+    public void skipsSameValues() {
+        q.id(TEXT).text("a").textColor(Color.RED).visibility(View.VISIBLE).enabled(true);
+        q.id(TEXT).text("a").textColor(Color.RED).visibility(View.VISIBLE).enabled(true);
+        assertEquals(1, text.texts);
+        // visibility and enabled already held those values before the first chain
+        assertEquals(6, q.getSkippedWrites());
+    }
+
+    @Test
+    public void writesChangedValues() {
+        q.id(TEXT).text("a");
+        q.id(TEXT).text("b");
+        assertEquals(2, text.texts);
+        assertEquals("b", text.getText().toString());
+        assertEquals(0, q.getSkippedWrites());
+    }
+
+    @Test
+    public void styledTextIsAlwaysWritten() {
+        q.id(TEXT).text(new SpannableString("a"));
+        q.id(TEXT).text(new SpannableString("a"));
+        assertEquals(2, text.texts);
+    }
+
+    @Test
+    public void skipsSameCheckedState() {
+        q.id(CHECK).checked(true);
+        q.id(CHECK).checked(true);
+        assertEquals(1, q.getSkippedWrites());
+    }
+
+    @Test
+    public void skipsSameImageUntilTheDrawableChanges() {
+        q.id(IMAGE).image(android.R.drawable.ic_dialog_alert);
+        q.id(IMAGE).image(android.R.drawable.ic_dialog_alert);
+        assertEquals(1, q.getSkippedWrites());
+        image.setImageDrawable(null);
+        q.id(IMAGE).image(android.R.drawable.ic_dialog_alert);
+        assertEquals(1, q.getSkippedWrites());
+    }
+
+    @Test
+    public void writesAllWhenDisabled() {
+        q.skipUnchanged(false);
+        q.id(TEXT).text("a");
+        q.id(TEXT).text("a");
+        assertEquals(2, text.texts);
+        assertEquals(0, q.getSkippedWrites());
+    }
+
+    private static final class CountingText extends TextView {
+        int texts;
+
+        CountingText(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void setText(CharSequence text, BufferType type) {
+            texts++;
+            super.setText(text, type);
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package com.cocosw.query;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TaskCacheTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    @Test
+    public void evictsLeastRecentlyUsed() {
+        TaskCache cache = new TaskCache(2);
+        cache.put("a", 1, 1, TimeUnit.MINUTES);
+        cache.put("b", 2, 1, TimeUnit.MINUTES);
+        cache.get("a");
+        cache.put("c", 3, 1, TimeUnit.MINUTES);
+        assertEquals(1, (int) cache.<Integer>get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void boundedByWeight() {
+        TaskCache cache = new TaskCache(10, new TaskCache.Weigher() {
+            @Override
+            public int weigh(Object key, Object value) {
+                return (Integer) value;
+            }
+        });
+        cache.put("a", 6, 1, TimeUnit.MINUTES);
+        cache.put("b", 4, 1, TimeUnit.MINUTES);
+        assertEquals(10, cache.weight());
+        cache.put("a", 2, 1, TimeUnit.MINUTES);
+        assertEquals(6, cache.weight());
+        cache.put("c", 5, 1, TimeUnit.MINUTES);
+        assertNull(cache.get("b"));
+        assertEquals(7, cache.weight());
+    }
+
+    @Test
+    public void expiredEntryIsOnlyForStaleLookup() {
+        TaskCache cache = new TaskCache(2);
+        cache.put("a", 1, 0, TimeUnit.SECONDS);
+        assertNull(cache.get("a"));
+        long now = System.nanoTime();
+        assertNull(cache.lookup("a", false, now));
+        assertNotNull(cache.lookup("a", true, now));
+        assertEquals(1, cache.getMissCount());
+        assertEquals(1, cache.getStaleHitCount());
+    }
+
+    @Test
+    public void cachedResultSkipsTheWork() {
+        TaskCache cache = new TaskCache(2);
+        Counting first = new Counting("v1");
+        first.key("k").cache(cache, 1, TimeUnit.MINUTES).async(RuntimeEnvironment.application);
+        Counting second = new Counting("v2");
+        second.key("k").cache(cache, 1, TimeUnit.MINUTES).async(RuntimeEnvironment.application);
+        assertEquals(1, first.works);
+        assertEquals(0, second.works);
+        assertEquals(Arrays.asList("v1"), second.results);
+        assertEquals(1, cache.getHitCount());
+    }
+
+    @Test
+    public void staleResultIsShownThenRefreshed() {
+        TaskCache cache = new TaskCache(2);
+        cache.put("k", "old", 0, TimeUnit.SECONDS);
+        Counting task = new Counting("new");
+        task.key("k").cache(cache, 1, TimeUnit.MINUTES).staleWhileRevalidate().async(RuntimeEnvironment.application);
+        assertEquals(1, task.works);
+        assertEquals(Arrays.asList("old", "new"), task.results);
+        assertEquals("new", cache.get("k"));
+    }
+
+    @Test
+    public void sameRefreshedResultIsNotCalledBackAgain() {
+        TaskCache cache = new TaskCache(2);
+        cache.put("k", "same", 0, TimeUnit.SECONDS);
+        Counting task = new Counting("same");
+        task.key("k").cache(cache, 1, TimeUnit.MINUTES).staleWhileRevalidate().async(RuntimeEnvironment.application);
+        assertEquals(1, task.works);
+        assertEquals(Arrays.asList("same"), task.results);
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void cacheNeedsKey() {
+        new Counting("v").cache(new TaskCache(1), 1, TimeUnit.MINUTES).async(RuntimeEnvironment.application);
+    }
+
+    private static final class Counting extends CocoTask<String> {
+        private final String value;
+        final List<String> results = new ArrayList<String>();
+        int works;
+
+        Counting(String value) {
+            this.value = value;
+            executor(DIRECT);
+        }
+
+        @Override
+        public String backgroundWork() {
+            works++;
+            return value;
+        }
+
+        @Override
+        public void callback(String result) {
+            results.add(result);
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.cocosw.query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TaskExecutorChoiceTest {
+
+    private Recording task;
+    private Recording query;
+    private Recording fallback;
+    private CocoQuery<AbstractViewQuery.DefaultQuery> q;
+
+    @Before
+    public void setUp() {
+        task = new Recording();
+        query = new Recording();
+        fallback = new Recording();
+        CocoTask.setDefaultExecutor(fallback);
+        q = new CocoQuery<AbstractViewQuery.DefaultQuery>(RuntimeEnvironment.application);
+    }
+
+    @After
+    public void tearDown() {
+        CocoTask.setDefaultExecutor(TaskExecutor.CPU);
+    }
+
+    @Test
+    public void taskExecutorComesFirst() {
+        Value value = new Value();
+        q.executor(query).task(value.executor(task));
+        assertEquals(1, task.count);
+        assertEquals(0, query.count);
+        assertTrue(value.called);
+    }
+
+    @Test
+    public void queryExecutorIsTheFallback() {
+        Value value = new Value();
+        q.executor(query).task(value);
+        assertEquals(1, query.count);
+        assertEquals(0, fallback.count);
+        assertTrue(value.called);
+    }
+
+    @Test
+    public void defaultExecutorIsTheLastResort() {
+        q.task(new Value());
+        assertEquals(1, fallback.count);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void defaultExecutorIsRequired() {
+        CocoTask.setDefaultExecutor(null);
+    }
+
+    @Test
+    public void namedPoolsAreSet() {
+        Value value = new Value();
+        value.ioBound();
+        assertEquals(TaskExecutor.IO, value.getExecutor());
+        value.cpuBound();
+        assertEquals(TaskExecutor.CPU, value.getExecutor());
+    }
+
+    /**
+     * Runs the work inline, the result is posted to the unpaused main looper and delivered at once
+     */
+    private static final class Recording implements Executor {
+        int count;
+
+        @Override
+        public void execute(Runnable command) {
+            count++;
+            command.run();
+        }
+    }
+
+    private static final class Value extends CocoTask<Integer> {
+        boolean called;
+
+        @Override
+        public Integer backgroundWork() {
+            return 1;
+        }
+
+        @Override
+        public void callback(Integer result) {
+            called = true;
+        }
+    }
+}
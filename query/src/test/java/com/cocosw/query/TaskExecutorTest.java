@@ -0,0 +1,158 @@
+package com.cocosw.query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TaskExecutorTest {
+
+    private final List<String> ran = new ArrayList<String>();
+    private final CountDownLatch release = new CountDownLatch(1);
+    private final CountDownLatch started = new CountDownLatch(1);
+    private TaskExecutor executor;
+
+    @Before
+    public void setUp() throws Exception {
+        // one thread and one queue slot
+        executor = new TaskExecutor("test", 1, 1, 1, TimeUnit.SECONDS,
+                new PriorityTaskQueue(1, 1, TimeUnit.SECONDS));
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        started.await();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void rejectsWhenSaturated() {
+        executor.execute(new Work("a", CocoTask.Priority.NORMAL));
+        try {
+            executor.execute(new Work("b", CocoTask.Priority.NORMAL));
+            fail();
+        } catch (RejectedExecutionException expected) {
+        }
+        assertEquals(1, executor.getRejectedCount());
+    }
+
+    @Test
+    public void spilledTasksRunInSubmissionOrder() throws Exception {
+        executor.setSaturationPolicy(TaskExecutor.Saturation.SPILL);
+        executor.execute(new Work("a", CocoTask.Priority.NORMAL));
+        executor.execute(new Work("b", CocoTask.Priority.NORMAL));
+        executor.execute(new Work("c", CocoTask.Priority.IMMEDIATE));
+        assertEquals(2, executor.getSpilledCount());
+        assertEquals(2, executor.getSpillDepth());
+        release.countDown();
+        executor.shutdown();
+        // spilled tasks are queued when a thread is free, so shutdown waits for them too
+        awaitRan(3);
+        assertEquals(Arrays.asList("a", "b", "c"), ran());
+        assertEquals(0, executor.getSpillDepth());
+    }
+
+    @Test
+    public void dropsOldestPrefetchForHigherPriority() throws Exception {
+        executor.setSaturationPolicy(TaskExecutor.Saturation.DROP_OLDEST_PREFETCH);
+        Work prefetch = new Work("prefetch", CocoTask.Priority.PREFETCH);
+        executor.execute(prefetch);
+        executor.execute(new Work("normal", CocoTask.Priority.NORMAL));
+        assertTrue(prefetch.rejected);
+        assertEquals(1, executor.getDroppedCount());
+        release.countDown();
+        awaitRan(1);
+        assertEquals(Arrays.asList("normal"), ran());
+    }
+
+    @Test
+    public void prefetchDoesNotEvictPrefetch() {
+        executor.setSaturationPolicy(TaskExecutor.Saturation.DROP_OLDEST_PREFETCH);
+        Work queued = new Work("queued", CocoTask.Priority.PREFETCH);
+        executor.execute(queued);
+        try {
+            executor.execute(new Work("late", CocoTask.Priority.PREFETCH));
+            fail();
+        } catch (RejectedExecutionException expected) {
+        }
+        assertFalse(queued.rejected);
+        assertEquals(0, executor.getDroppedCount());
+        assertEquals(1, executor.getRejectedCount());
+    }
+
+    @Test
+    public void rejectsWhenNoPrefetchIsQueued() {
+        executor.setSaturationPolicy(TaskExecutor.Saturation.DROP_OLDEST_PREFETCH);
+        executor.execute(new Work("a", CocoTask.Priority.NORMAL));
+        try {
+            executor.execute(new Work("b", CocoTask.Priority.IMMEDIATE));
+            fail();
+        } catch (RejectedExecutionException expected) {
+        }
+        assertEquals(1, executor.getRejectedCount());
+    }
+
+    private List<String> ran() {
+        synchronized (ran) {
+            return new ArrayList<String>(ran);
+        }
+    }
+
+    private void awaitRan(int count) throws InterruptedException {
+        final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (ran().size() < count && System.nanoTime() - end < 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    private final class Work implements Runnable, PriorityTaskQueue.Prioritized {
+        private final String name;
+        private final CocoTask.Priority priority;
+        volatile boolean rejected;
+
+        Work(String name, CocoTask.Priority priority) {
+            this.name = name;
+            this.priority = priority;
+        }
+
+        @Override
+        public void run() {
+            synchronized (ran) {
+                ran.add(name);
+            }
+        }
+
+        @Override
+        public CocoTask.Priority priority() {
+            return priority;
+        }
+
+        @Override
+        public void reject(RejectedExecutionException e) {
+            rejected = true;
+        }
+    }
+}
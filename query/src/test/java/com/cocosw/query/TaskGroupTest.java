@@ -0,0 +1,97 @@
+package com.cocosw.query;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TaskGroupTest {
+
+    private static final Executor REJECTING = new Executor() {
+        @Override
+        public void execute(Runnable r) {
+            throw new RejectedExecutionException();
+        }
+    };
+
+    @Test
+    public void keepsTheOrderOfTheTasks() throws Exception {
+        final ExecutorService pool = Executors.newFixedThreadPool(2);
+        TaskGroup group = new TaskGroup(Arrays.asList(new Value(1), new Value(2), new Value(3)));
+        group.executor(pool);
+        List<TaskGroup.Outcome> outcomes = group.backgroundWork();
+        pool.shutdown();
+        assertEquals(3, outcomes.size());
+        for (int i = 0; i < 3; i++) {
+            assertTrue(outcomes.get(i).isSuccess());
+            assertEquals(i + 1, (int) outcomes.get(i).<Integer>getResult());
+        }
+    }
+
+    @Test
+    public void runsOnTheGroupThreadWhenRejected() throws Exception {
+        TaskGroup group = new TaskGroup(Arrays.asList(new Value(1), new Value(2)));
+        group.executor(REJECTING);
+        List<TaskGroup.Outcome> outcomes = group.backgroundWork();
+        assertEquals(1, (int) outcomes.get(0).<Integer>getResult());
+        assertEquals(2, (int) outcomes.get(1).<Integer>getResult());
+    }
+
+    @Test
+    public void failFastDoesNotInterruptTheGroup() throws Exception {
+        final CountDownLatch spinning = new CountDownLatch(1);
+        // busy on the group thread, it only stops when interrupted and doesn't clear the flag
+        final CocoTask<Object> busy = new CocoTask<Object>() {
+            @Override
+            public Object backgroundWork() throws Exception {
+                spinning.countDown();
+                final long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+                while (!Thread.currentThread().isInterrupted() && System.nanoTime() - end < 0) {
+                    Thread.yield();
+                }
+                return null;
+            }
+        };
+        final ExecutorService pool = Executors.newSingleThreadExecutor();
+        final CocoTask<Object> failing = new CocoTask<Object>() {
+            @Override
+            public Object backgroundWork() throws Exception {
+                spinning.await();
+                throw new IllegalStateException("failed");
+            }
+        };
+        failing.executor(pool);
+        TaskGroup group = new TaskGroup(Arrays.<CocoTask<?>>asList(busy, failing));
+        group.failFast().executor(REJECTING);
+
+        List<TaskGroup.Outcome> outcomes = group.backgroundWork();
+        pool.shutdown();
+        assertFalse(Thread.interrupted());
+        assertTrue(outcomes.get(0).getError() instanceof CancellationException);
+        assertTrue(outcomes.get(1).getError() instanceof IllegalStateException);
+    }
+
+    private static final class Value extends CocoTask<Integer> {
+        private final int value;
+
+        Value(int value) {
+            this.value = value;
+        }
+
+        @Override
+        public Integer backgroundWork() {
+            return value;
+        }
+    }
+}
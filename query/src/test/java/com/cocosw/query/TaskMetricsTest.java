@@ -0,0 +1,157 @@
+package com.cocosw.query;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TaskMetricsTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private TaskMetrics metrics;
+
+    @Before
+    public void setUp() {
+        metrics = new TaskMetrics();
+        CocoTask.setObserver(metrics);
+    }
+
+    @After
+    public void tearDown() {
+        CocoTask.setObserver(null);
+    }
+
+    @Test
+    public void percentileIsTheBucketBound() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (int i = 0; i < 99; i++) {
+            histogram.record(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        histogram.record(TimeUnit.MILLISECONDS.toNanos(50));
+        assertEquals(100, histogram.getCount());
+        assertEquals(128, histogram.getPercentile(50, TimeUnit.MICROSECONDS));
+        assertEquals(128, histogram.getPercentile(99, TimeUnit.MICROSECONDS));
+        // never above the max
+        assertEquals(50, histogram.getPercentile(100, TimeUnit.MILLISECONDS));
+        assertEquals(50, histogram.getMax(TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void emptyHistogramIsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        assertEquals(0, histogram.getPercentile(99, TimeUnit.NANOSECONDS));
+        assertEquals(0, histogram.getMean(TimeUnit.NANOSECONDS));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void percentileIsChecked() {
+        new LatencyHistogram().getPercentile(101, TimeUnit.NANOSECONDS);
+    }
+
+    @Test
+    public void tasksAreMeasuredByClass() {
+        new Value().executor(DIRECT).async(RuntimeEnvironment.application);
+        new Value().executor(DIRECT).async(RuntimeEnvironment.application);
+        new Failing().executor(DIRECT).async(RuntimeEnvironment.application);
+        TaskMetrics.Stats values = metrics.get(Value.class);
+        assertEquals(2, values.getQueueWait().getCount());
+        assertEquals(2, values.getExecution().getCount());
+        assertEquals(2, values.getDelivery().getCount());
+        assertEquals(0, values.getFailureCount());
+        assertEquals(1, metrics.get(Failing.class).getFailureCount());
+        assertEquals(2, metrics.getAll().size());
+    }
+
+    @Test
+    public void cancelIsCounted() {
+        final List<Runnable> held = new ArrayList<Runnable>();
+        Value task = new Value();
+        task.executor(new Executor() {
+            @Override
+            public void execute(Runnable command) {
+                held.add(command);
+            }
+        }).async(RuntimeEnvironment.application);
+        task.cancel();
+        assertEquals(1, metrics.get(Value.class).getCancelCount());
+        assertEquals(0, metrics.get(Value.class).getExecution().getCount());
+    }
+
+    @Test
+    public void observerSeesTheLifecycle() {
+        final List<String> events = new ArrayList<String>();
+        CocoTask.setObserver(new TaskObserver() {
+            @Override
+            public void onSubmit(CocoTask<?> task) {
+                events.add("submit");
+            }
+
+            @Override
+            public void onStart(CocoTask<?> task, long queueNanos) {
+                events.add("start");
+            }
+
+            @Override
+            public void onFinish(CocoTask<?> task, long executionNanos, Exception error) {
+                events.add(error == null ? "finish" : "fail");
+            }
+
+            @Override
+            public void onCallback(CocoTask<?> task, long deliveryNanos) {
+                events.add("callback");
+            }
+
+            @Override
+            public void onCancel(CocoTask<?> task) {
+                events.add("cancel");
+            }
+        });
+        new Value().executor(DIRECT).async(RuntimeEnvironment.application);
+        assertEquals(Arrays.asList("submit", "start", "finish", "callback"), events);
+    }
+
+    @Test
+    public void resetClearsTheStats() {
+        new Value().executor(DIRECT).async(RuntimeEnvironment.application);
+        metrics.reset();
+        assertEquals(0, metrics.get(Value.class).getExecution().getCount());
+        assertNull(metrics.get(Failing.class));
+        assertTrue(metrics.toString().length() > 0);
+    }
+
+    private static final class Value extends CocoTask<Integer> {
+        @Override
+        public Integer backgroundWork() {
+            return 1;
+        }
+    }
+
+    private static final class Failing extends CocoTask<Integer> {
+        @Override
+        public Integer backgroundWork() throws Exception {
+            throw new IOException("failed");
+        }
+    }
+}
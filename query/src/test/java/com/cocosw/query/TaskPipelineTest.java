@@ -0,0 +1,182 @@
+package com.cocosw.query;
+
+import android.util.Pair;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TaskPipelineTest {
+
+    private static final Executor DIRECT = new Executor() {
+        @Override
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
+    private static final Executor REJECTING = new Executor() {
+        @Override
+        public void execute(Runnable r) {
+            throw new RejectedExecutionException();
+        }
+    };
+
+    @Test
+    public void mapKeepsTheSettings() throws Exception {
+        CocoTask<Integer> source = new Value<Integer>(2).executor(DIRECT).priority(CocoTask.Priority.PREFETCH);
+        CocoTask<String> mapped = source.map(new CocoTask.Stage<Integer, String>() {
+            @Override
+            public String apply(Integer input) {
+                return "#" + input;
+            }
+        });
+        assertEquals("#2", mapped.backgroundWork());
+        assertSame(DIRECT, mapped.getExecutor());
+        assertEquals(CocoTask.Priority.PREFETCH, mapped.getPriority());
+    }
+
+    @Test
+    public void thenRunsTheNextWork() throws Exception {
+        CocoTask<Integer> next = new Value<Integer>(2).then(new CocoTask.Stage<Integer, CocoTask<Integer>>() {
+            @Override
+            public CocoTask<Integer> apply(Integer input) {
+                return new Value<Integer>(input * 10);
+            }
+        });
+        assertEquals(20, (int) next.backgroundWork());
+    }
+
+    @Test
+    public void zipRunsBothWorksInParallel() throws Exception {
+        final CountDownLatch firstRunning = new CountDownLatch(1);
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        CocoTask<String> first = new CocoTask<String>() {
+            @Override
+            public String backgroundWork() {
+                firstRunning.countDown();
+                return "a";
+            }
+        };
+        CocoTask<String> second = new CocoTask<String>() {
+            @Override
+            public String backgroundWork() throws Exception {
+                // only returns if it runs beside the first work
+                if (!firstRunning.await(5, TimeUnit.SECONDS)) {
+                    throw new IllegalStateException("not in parallel");
+                }
+                return "b";
+            }
+        };
+        Pair<String, String> pair = first.zip(second.executor(pool)).backgroundWork();
+        pool.shutdown();
+        assertEquals("a", pair.first);
+        assertEquals("b", pair.second);
+    }
+
+    @Test
+    public void zipRunsRejectedWorkOnItsOwnThread() throws Exception {
+        Pair<Integer, String> pair = new Value<Integer>(1).zip(new Value<String>("b").executor(REJECTING))
+                .backgroundWork();
+        assertEquals(1, (int) pair.first);
+        assertEquals("b", pair.second);
+    }
+
+    @Test
+    public void zipFailsWithEitherWork() throws Exception {
+        try {
+            new Value<Integer>(1).zip(new Failing<String>().executor(DIRECT)).backgroundWork();
+            fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void onErrorResumeReplacesTheFailure() throws Exception {
+        CocoTask<String> resumed = new Failing<String>().onErrorResume(new CocoTask.Stage<Exception, String>() {
+            @Override
+            public String apply(Exception input) {
+                return input.getMessage();
+            }
+        });
+        assertEquals("failed", resumed.backgroundWork());
+    }
+
+    @Test
+    public void derivedTaskCallsTheListener() {
+        final String[] result = new String[1];
+        final Exception[] error = new Exception[1];
+        new Value<Integer>(3).executor(DIRECT).map(new CocoTask.Stage<Integer, String>() {
+            @Override
+            public String apply(Integer input) {
+                return String.valueOf(input);
+            }
+        }).listen(new CocoTask.Listener<String>() {
+            @Override
+            public void callback(String r) {
+                result[0] = r;
+            }
+
+            @Override
+            public void failcallback(String r, Exception e) {
+                error[0] = e;
+            }
+        }).async(RuntimeEnvironment.application);
+        assertEquals("3", result[0]);
+        assertNull(error[0]);
+    }
+
+    @Test
+    public void failedStageCallsTheListener() {
+        final Exception[] error = new Exception[1];
+        new Failing<Integer>().executor(DIRECT).listen(new CocoTask.Listener<Integer>() {
+            @Override
+            public void callback(Integer r) {
+            }
+
+            @Override
+            public void failcallback(Integer r, Exception e) {
+                error[0] = e;
+            }
+        }).async(RuntimeEnvironment.application);
+        assertTrue(error[0] instanceof IOException);
+    }
+
+    private static final class Value<T> extends CocoTask<T> {
+        private final T value;
+
+        Value(T value) {
+            this.value = value;
+        }
+
+        @Override
+        public T backgroundWork() {
+            return value;
+        }
+    }
+
+    private static final class Failing<T> extends CocoTask<T> {
+        @Override
+        public T backgroundWork() throws Exception {
+            throw new IOException("failed");
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.cocosw.query;
+
+import android.app.Activity;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.Robolectric;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.util.ActivityController;
+
+import java.util.ArrayList;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class TaskRegistryTest {
+
+    private Deferred executor;
+
+    @Before
+    public void setUp() {
+        executor = new Deferred();
+    }
+
+    @Test
+    public void finishedTasksAreRemoved() {
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = query();
+        Value a = new Value();
+        q.task(a).task(new Value());
+        assertEquals(2, q.getTaskCount());
+        executor.runAll();
+        assertTrue(a.called);
+        assertEquals(0, q.getTaskCount());
+    }
+
+    @Test
+    public void cancelledTaskIsRemoved() {
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = query();
+        Value a = new Value();
+        q.task(a);
+        a.cancel();
+        assertEquals(0, q.getTaskCount());
+    }
+
+    @Test
+    public void destroyCancelsRunningTasks() {
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = query();
+        Value a = new Value();
+        q.task(a);
+        q.destroy();
+        executor.runAll();
+        assertFalse(a.called);
+        assertEquals(0, q.getTaskCount());
+    }
+
+    @Test
+    public void tasksAfterDestroyAreIgnored() {
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = query();
+        q.destroy();
+        Value a = new Value();
+        q.task(a);
+        assertEquals(0, executor.size());
+        assertEquals(0, q.getTaskCount());
+    }
+
+    @Test
+    public void destroyedWithTheActivity() {
+        ActivityController<Activity> controller = Robolectric.buildActivity(Activity.class).create();
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = new CocoQuery<AbstractViewQuery.DefaultQuery>(controller.get());
+        q.executor(executor);
+        Value a = new Value();
+        q.task(a);
+        assertEquals(1, q.getTaskCount());
+        controller.destroy();
+        assertEquals(0, q.getTaskCount());
+        executor.runAll();
+        assertFalse(a.called);
+    }
+
+    private CocoQuery<AbstractViewQuery.DefaultQuery> query() {
+        return new CocoQuery<AbstractViewQuery.DefaultQuery>(RuntimeEnvironment.application).executor(executor);
+    }
+
+    private static final class Value extends CocoTask<Integer> {
+        boolean called;
+
+        @Override
+        public Integer backgroundWork() {
+            return 1;
+        }
+
+        @Override
+        public void callback(Integer result) {
+            called = true;
+        }
+    }
+
+    /**
+     * Holds the work until the test runs it, on main thread
+     */
+    private static final class Deferred implements Executor {
+        private final ArrayList<Runnable> queued = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            queued.add(command);
+        }
+
+        int size() {
+            return queued.size();
+        }
+
+        void runAll() {
+            ArrayList<Runnable> run = new ArrayList<Runnable>(queued);
+            queued.clear();
+            for (Runnable r : run) {
+                r.run();
+            }
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.cocosw.query;
+
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TaskTimerTest {
+
+    @Test
+    public void neverFiresBeforeTheDelay() throws InterruptedException {
+        // 8 buckets of 10ms, so the longer delays go around the wheel
+        final TaskTimer timer = new TaskTimer(10, TimeUnit.MILLISECONDS, 8);
+        final long[] delays = {0, 5, 25, 79, 80, 150, 333};
+        final CountDownLatch fired = new CountDownLatch(delays.length);
+        final AtomicLong early = new AtomicLong();
+        for (final long delay : delays) {
+            final long scheduled = System.nanoTime();
+            timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    if (System.nanoTime() - scheduled < TimeUnit.MILLISECONDS.toNanos(delay)) {
+                        early.incrementAndGet();
+                    }
+                    fired.countDown();
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        }
+        assertTrue(fired.await(5, TimeUnit.SECONDS));
+        assertTrue(early.get() == 0);
+    }
+
+    @Test
+    public void firesAfterIdle() throws InterruptedException {
+        final TaskTimer timer = new TaskTimer(10, TimeUnit.MILLISECONDS, 8);
+        final CountDownLatch first = new CountDownLatch(1);
+        timer.schedule(countDown(first), 0, TimeUnit.MILLISECONDS);
+        assertTrue(first.await(1, TimeUnit.SECONDS));
+        Thread.sleep(200);
+        final long scheduled = System.nanoTime();
+        final CountDownLatch second = new CountDownLatch(1);
+        timer.schedule(countDown(second), 50, TimeUnit.MILLISECONDS);
+        assertTrue(second.await(1, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - scheduled >= TimeUnit.MILLISECONDS.toNanos(50));
+    }
+
+    @Test
+    public void cancelledNeverFires() throws InterruptedException {
+        final TaskTimer timer = new TaskTimer(10, TimeUnit.MILLISECONDS, 8);
+        final AtomicBoolean ran = new AtomicBoolean();
+        TaskTimer.Timeout timeout = timer.schedule(new Runnable() {
+            @Override
+            public void run() {
+                ran.set(true);
+            }
+        }, 30, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertTrue(timeout.isCancelled());
+        final CountDownLatch later = new CountDownLatch(1);
+        timer.schedule(countDown(later), 60, TimeUnit.MILLISECONDS);
+        assertTrue(later.await(1, TimeUnit.SECONDS));
+        assertFalse(ran.get());
+    }
+
+    @Test
+    public void cancelAfterFiringFails() throws InterruptedException {
+        final TaskTimer timer = new TaskTimer(10, TimeUnit.MILLISECONDS, 8);
+        final CountDownLatch fired = new CountDownLatch(1);
+        TaskTimer.Timeout timeout = timer.schedule(countDown(fired), 0, TimeUnit.MILLISECONDS);
+        assertTrue(fired.await(1, TimeUnit.SECONDS));
+        assertFalse(timeout.cancel());
+    }
+
+    private static Runnable countDown(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                latch.countDown();
+            }
+        };
+    }
+}
@@ -0,0 +1,137 @@
+package com.cocosw.query;
+
+import android.content.Context;
+import android.view.View;
+import android.widget.CheckBox;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowLooper;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ThreadSafeTest {
+
+    private static final int TEXT = 1;
+    private static final int CHECK = 2;
+
+    private TextView text;
+    private CheckBox check;
+    private CocoQuery<AbstractViewQuery.DefaultQuery> q;
+
+    @Before
+    public void setUp() {
+        Context context = RuntimeEnvironment.application;
+        LinearLayout root = new LinearLayout(context);
+        text = new TextView(context);
+        text.setId(TEXT);
+        root.addView(text);
+        check = new CheckBox(context);
+        check.setId(CHECK);
+        root.addView(check);
+        q = new CocoQuery<AbstractViewQuery.DefaultQuery>(root).threadSafe(true);
+        // posts from the worker must wait for the main looper
+        ShadowLooper.pauseMainLooper();
+    }
+
+    @Test
+    public void writesAreAppliedOnMainThread() throws Throwable {
+        background(new Runnable() {
+            @Override
+            public void run() {
+                q.id(TEXT).text("a").visibility(View.INVISIBLE);
+                q.id(TEXT).text("b");
+                q.id(CHECK).checked(true).enabled(false);
+            }
+        });
+        assertEquals("", text.getText().toString());
+        assertFalse(check.isChecked());
+        ShadowLooper.idleMainLooper();
+        assertEquals("b", text.getText().toString());
+        assertEquals(View.INVISIBLE, text.getVisibility());
+        assertTrue(check.isChecked());
+        assertFalse(check.isEnabled());
+    }
+
+    @Test
+    public void viewIsNotExposedOffMainThread() throws Throwable {
+        background(new Runnable() {
+            @Override
+            public void run() {
+                assertNull(q.id(TEXT).getView());
+            }
+        });
+    }
+
+    @Test
+    public void unrecordableCallThrows() throws Throwable {
+        background(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    q.id(TEXT).tag("t");
+                    throw new AssertionError("tag() is not recorded");
+                } catch (IllegalStateException expected) {
+                }
+            }
+        });
+        assertNull(text.getTag());
+    }
+
+    @Test
+    public void groupSelectorThrows() throws Throwable {
+        background(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    q.ids(TEXT, CHECK);
+                    throw new AssertionError("ids() walks the tree");
+                } catch (IllegalStateException expected) {
+                }
+                try {
+                    q.find(TextView.class);
+                    throw new AssertionError("find() walks the tree");
+                } catch (IllegalStateException expected) {
+                }
+            }
+        });
+    }
+
+    @Test
+    public void mainThreadWritesDirectly() {
+        q.id(TEXT).text("a").tag("t");
+        assertEquals("a", text.getText().toString());
+        assertEquals(2, q.ids(TEXT, CHECK).size());
+    }
+
+    private static void background(Runnable runnable) throws Throwable {
+        final Throwable[] error = new Throwable[1];
+        final Runnable work = runnable;
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    work.run();
+                } catch (Throwable e) {
+                    error[0] = e;
+                }
+            }
+        });
+        thread.start();
+        thread.join();
+        if (error[0] != null) {
+            throw error[0];
+        }
+    }
+}
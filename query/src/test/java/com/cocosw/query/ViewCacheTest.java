@@ -0,0 +1,74 @@
+package com.cocosw.query;
+
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ViewCacheTest {
+
+    private static final int TEXT = 1;
+
+    private LinearLayout root;
+    private TextView text;
+
+    @Before
+    public void setUp() {
+        root = new LinearLayout(RuntimeEnvironment.application);
+        text = newText();
+        root.addView(text);
+    }
+
+    private TextView newText() {
+        TextView view = new TextView(RuntimeEnvironment.application);
+        view.setId(TEXT);
+        return view;
+    }
+
+    @Test
+    public void secondLookupIsCached() {
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = new CocoQuery<AbstractViewQuery.DefaultQuery>(root);
+        assertSame(text, q.id(TEXT).getView());
+        assertSame(text, q.id(TEXT).getView());
+        assertEquals(1, q.getCacheMisses());
+        assertEquals(1, q.getCacheHits());
+    }
+
+    @Test
+    public void removedViewIsLookedUpAgain() {
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = new CocoQuery<AbstractViewQuery.DefaultQuery>(root);
+        q.id(TEXT);
+        root.removeView(text);
+        TextView replaced = newText();
+        root.addView(replaced);
+        assertSame(replaced, q.id(TEXT).getView());
+        assertEquals(2, q.getCacheMisses());
+    }
+
+    @Test
+    public void changedIdIsLookedUpAgain() {
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = new CocoQuery<AbstractViewQuery.DefaultQuery>(root);
+        q.id(TEXT);
+        text.setId(2);
+        assertSame(null, q.id(TEXT).getView());
+    }
+
+    @Test
+    public void disabledCacheAlwaysWalks() {
+        CocoQuery<AbstractViewQuery.DefaultQuery> q = new CocoQuery<AbstractViewQuery.DefaultQuery>(root).viewCache(false);
+        q.id(TEXT);
+        q.id(TEXT);
+        assertEquals(0, q.getCacheHits());
+        assertEquals(0, q.getCacheMisses());
+    }
+}
@@ -0,0 +1,102 @@
+package com.cocosw.query;
+
+import android.content.Context;
+import android.widget.Button;
+import android.widget.FrameLayout;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.ShadowExtractor;
+import org.robolectric.shadows.ShadowViewTreeObserver;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+@RunWith(RobolectricTestRunner.class)
+@Config(manifest = Config.NONE)
+public class ViewIndexTest {
+
+    private static final int FIRST = 1;
+
+    private Context context;
+    private LinearLayout root;
+    private TextView first;
+    private Button button;
+    private CocoQuery<AbstractViewQuery.DefaultQuery> q;
+
+    @Before
+    public void setUp() {
+        context = RuntimeEnvironment.application;
+        root = new LinearLayout(context);
+        first = new TextView(context);
+        first.setId(FIRST);
+        root.addView(first);
+        FrameLayout frame = new FrameLayout(context);
+        button = new Button(context);
+        button.setTag("b");
+        frame.addView(button);
+        root.addView(frame);
+        q = new CocoQuery<AbstractViewQuery.DefaultQuery>(root);
+    }
+
+    @Test
+    public void findsBySubclass() {
+        // Button is a TextView too
+        assertEquals(2, q.find(TextView.class).size());
+        QueryGroup<AbstractViewQuery.DefaultQuery> buttons = q.find(Button.class);
+        assertEquals(1, buttons.size());
+        assertSame(button, buttons.getView(0));
+    }
+
+    @Test
+    public void findsByTag() {
+        assertSame(button, q.findByTag("b").getView(0));
+        assertEquals(0, q.findByTag("none").size());
+    }
+
+    @Test
+    public void addedViewIsSeenAfterLayout() {
+        assertEquals(1, q.find(Button.class).size());
+        root.addView(new Button(context));
+        assertEquals("index is kept until the tree is laid out", 1, q.find(Button.class).size());
+        observer().fireOnGlobalLayoutListeners();
+        assertEquals(2, q.find(Button.class).size());
+    }
+
+    @Test
+    public void tagThroughQueryReindexes() {
+        assertEquals(0, q.findByTag("t").size());
+        q.id(FIRST).tag("t");
+        assertSame(first, q.findByTag("t").getView(0));
+    }
+
+    @Test
+    public void recycleStopsListening() {
+        q.find(Button.class);
+        assertEquals(1, observer().getOnGlobalLayoutListeners().size());
+        q.recycle(new LinearLayout(context));
+        assertEquals(0, observer().getOnGlobalLayoutListeners().size());
+    }
+
+    @Test
+    public void reindexSeesDirectTag() {
+        assertEquals(0, q.findByTag("t").size());
+        first.setTag("t");
+        assertEquals(0, q.findByTag("t").size());
+        q.reindex();
+        assertEquals(1, q.findByTag("t").size());
+    }
+
+    /**
+     * Robolectric keeps global layout listeners in its shadow
+     */
+    private ShadowViewTreeObserver observer() {
+        return (ShadowViewTreeObserver) ShadowExtractor.extract(root.getViewTreeObserver());
+    }
+}